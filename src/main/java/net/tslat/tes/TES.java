@@ -5,6 +5,8 @@ import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import net.tslat.tes.api.TESConstants;
 import net.tslat.tes.config.TESConfig;
+import net.tslat.tes.core.hud.EntityHudLayout;
+import net.tslat.tes.core.particle.NumericGlyphCache;
 import net.tslat.tes.networking.TESNetworking;
 
 @Mod(TESConstants.MOD_ID)
@@ -18,5 +20,7 @@ public class TES {
 
 	private static void clientInit(final FMLClientSetupEvent ev) {
 		TESConstants.setIsClient();
+		ev.enqueueWork(NumericGlyphCache::registerReloadListener);
+		ev.enqueueWork(EntityHudLayout::registerReloadListener);
 	}
 }
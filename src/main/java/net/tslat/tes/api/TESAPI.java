@@ -11,7 +11,6 @@ import net.tslat.tes.core.hud.TESHud;
 import net.tslat.tes.core.particle.TESParticleClaimant;
 import net.tslat.tes.core.particle.TESParticleManager;
 import net.tslat.tes.core.particle.type.ComponentParticle;
-import net.tslat.tes.core.particle.type.NumericParticle;
 import net.tslat.tes.core.state.EntityState;
 import net.tslat.tes.core.state.TESEntityTracking;
 
@@ -154,7 +153,7 @@ public final class TESAPI {
 			TESConstants.NETWORKING.sendParticle(level, position, value, colour);
 		}
 		else {
-			TESParticleManager.addParticle(new NumericParticle(null, position, value).withColour(colour));
+			TESParticleManager.addNumericParticle(null, position.x(), position.y(), position.z(), TESParticle.Animation.POP_OFF, value, colour);
 		}
 	}
 
@@ -172,7 +171,7 @@ public final class TESAPI {
 			EntityState entityState = getTESDataForEntity(targetedEntity);
 
 			if (entityState != null)
-				TESParticleManager.addParticle(new NumericParticle(entityState, new Vector3f(targetedEntity.getEyePosition(1)), value).withColour(colour));
+				TESParticleManager.addNumericParticle(entityState, (float)targetedEntity.getX(), (float)targetedEntity.getEyeY(), (float)targetedEntity.getZ(), TESParticle.Animation.POP_OFF, value, colour);
 		}
 	}
 }
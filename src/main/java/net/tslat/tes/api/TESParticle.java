@@ -71,9 +71,44 @@ public interface TESParticle<D> {
 
 	/**
 	 * Animation handler abstract class for TES Particles.<br>
-	 * Provide your own implementation for custom animation
+	 * Provide your own implementation for custom animation.<br>
+	 * <br>
+	 * Animations have two forms: the {@link Vector3f}-based methods used by object particles, and the in-place methods used by TES' columnar particle storage.<br>
+	 * The in-place methods default to adapting the {@link Vector3f}-based ones, so only the latter need to be implemented.
+	 * Override both to avoid the per-tick allocations of the adapter.<br>
+	 * Animations that don't override the in-place methods are given to an object particle instead of the columnar storage, so that their {@link Vector3f}-based methods always receive the real particle.<br>
+	 * <br>
+	 * Animations that are purely constant-gravity motion can also declare their {@link Animation#getBallisticGravity gravity}, allowing TES to compute their position directly at render time instead of simulating them each tick
 	 */
 	abstract class Animation {
+		private static final ClassValue<Boolean> HAS_IN_PLACE_FORM = new ClassValue<Boolean>() {
+			@Override
+			protected Boolean computeValue(Class<?> type) {
+				try {
+					return type.getMethod("setInitialVelocity", float[].class, float[].class, int.class, Random.class).getDeclaringClass() != Animation.class &&
+							type.getMethod("perTickModifier", int.class, float[].class, float[].class, float[].class, int.class, Random.class).getDeclaringClass() != Animation.class;
+				}
+				catch (NoSuchMethodException ex) {
+					return false;
+				}
+			}
+		};
+		private static final TESParticle<?> DETACHED_PARTICLE = new TESParticle<Object>() {
+			@Override
+			public void updateData(Object data) {}
+
+			@Override
+			public void render(MatrixStack poseStack, Minecraft mc, FontRenderer fontRenderer, float partialTick) {}
+
+			@Override
+			public void tick(Minecraft mc) {}
+
+			@Override
+			public boolean isValid() {
+				return false;
+			}
+		};
+
 		public static final Animation POP_OFF = new Animation() {
 			@Override
 			public Vector3f getInitialVelocity(TESParticle<?> particle, Vector3f position, Random random) {
@@ -82,9 +117,30 @@ public interface TESParticle<D> {
 
 			@Override
 			public void perTickModifier(TESParticle<?> particle, int lifetime, Vector3f pos, Vector3f prevPos, Vector3f velocity, Random random) {
-				velocity.sub(new Vector3f(0, 0.05f, 0));
+				velocity.add(0, -0.05f, 0);
 				pos.add(velocity);
 			}
+
+			@Override
+			public float getBallisticGravity() {
+				return 0.05f;
+			}
+
+			@Override
+			public void setInitialVelocity(float[] pos, float[] velocity, int index, Random random) {
+				velocity[index] = (float)random.nextGaussian() * 0.03f + 0.025f;
+				velocity[index + 1] = random.nextFloat() * 0.045f + 0.3f;
+				velocity[index + 2] = (float)random.nextGaussian() * 0.03f + 0.025f;
+			}
+
+			@Override
+			public void perTickModifier(int lifetime, float[] pos, float[] prevPos, float[] velocity, int index, Random random) {
+				velocity[index + 1] -= 0.05f;
+
+				pos[index] += velocity[index];
+				pos[index + 1] += velocity[index + 1];
+				pos[index + 2] += velocity[index + 2];
+			}
 		};
 		public static final Animation RISE = new Animation() {
 			@Override
@@ -96,9 +152,34 @@ public interface TESParticle<D> {
 
 			@Override
 			public void perTickModifier(TESParticle<?> particle, int lifetime, Vector3f pos, Vector3f prevPos, Vector3f velocity, Random random) {
-				velocity.sub(new Vector3f(0, 0.02f, 0));
+				velocity.add(0, -0.02f, 0);
 				pos.add(velocity);
 			}
+
+			@Override
+			public float getBallisticGravity() {
+				return 0.02f;
+			}
+
+			@Override
+			public void setInitialVelocity(float[] pos, float[] velocity, int index, Random random) {
+				pos[index] += (float)random.nextGaussian() * 0.05f;
+				pos[index + 1] += 0.1f;
+				pos[index + 2] += (float)random.nextGaussian() * 0.05f;
+
+				velocity[index] = 0;
+				velocity[index + 1] = 0.2f;
+				velocity[index + 2] = 0;
+			}
+
+			@Override
+			public void perTickModifier(int lifetime, float[] pos, float[] prevPos, float[] velocity, int index, Random random) {
+				velocity[index + 1] -= 0.02f;
+
+				pos[index] += velocity[index];
+				pos[index + 1] += velocity[index + 1];
+				pos[index + 2] += velocity[index + 2];
+			}
 		};
 
 		/**
@@ -110,5 +191,64 @@ public interface TESParticle<D> {
 		 * A per-tick access for the animator, allowing for dynamic control
 		 */
 		public abstract void perTickModifier(TESParticle<?> particle, int lifetime, Vector3f pos, Vector3f prevPos, Vector3f velocity, Random random);
+
+		/**
+		 * In-place form of {@link #getInitialVelocity}.<br>
+		 * Write the initial velocity for the particle into the velocity array, starting at the given index.<br>
+		 * The position may also be modified in place.<br>
+		 * As there is no particle object for the adapted methods to receive, the default implementation passes them a detached, always-invalid stand-in particle
+		 * @param pos The position array, with the particle's x, y, and z at {@code index}, {@code index + 1}, and {@code index + 2}
+		 * @param velocity The velocity array, laid out the same as {@code pos}
+		 * @param index The index of the particle's x component in each array
+		 */
+		public void setInitialVelocity(float[] pos, float[] velocity, int index, Random random) {
+			Vector3f position = new Vector3f(pos[index], pos[index + 1], pos[index + 2]);
+			Vector3f initialVelocity = getInitialVelocity(DETACHED_PARTICLE, position, random);
+
+			writeVector(position, pos, index);
+			writeVector(initialVelocity, velocity, index);
+		}
+
+		/**
+		 * In-place form of {@link #perTickModifier(TESParticle, int, Vector3f, Vector3f, Vector3f, Random)}.<br>
+		 * Modify the particle's position and velocity directly in their arrays.<br>
+		 * As there is no particle object for the adapted methods to receive, the default implementation passes them a detached, always-invalid stand-in particle
+		 * @param pos The position array, with the particle's x, y, and z at {@code index}, {@code index + 1}, and {@code index + 2}
+		 * @param prevPos The previous position array, laid out the same as {@code pos}
+		 * @param velocity The velocity array, laid out the same as {@code pos}
+		 * @param index The index of the particle's x component in each array
+		 */
+		public void perTickModifier(int lifetime, float[] pos, float[] prevPos, float[] velocity, int index, Random random) {
+			Vector3f position = new Vector3f(pos[index], pos[index + 1], pos[index + 2]);
+			Vector3f prevPosition = new Vector3f(prevPos[index], prevPos[index + 1], prevPos[index + 2]);
+			Vector3f velocityVector = new Vector3f(velocity[index], velocity[index + 1], velocity[index + 2]);
+
+			perTickModifier(DETACHED_PARTICLE, lifetime, position, prevPosition, velocityVector, random);
+
+			writeVector(position, pos, index);
+			writeVector(velocityVector, velocity, index);
+		}
+
+		/**
+		 * If this animation's per-tick motion is exactly {@code velocity.y -= gravity; pos += velocity;} with no other changes, return that gravity value.<br>
+		 * The particle's position can then be computed at any point in time from its initial position and velocity, and {@link Animation#perTickModifier} will not be called for it.<br>
+		 * Return {@link Float#NaN} (the default) if the animation needs to be simulated each tick
+		 */
+		public float getBallisticGravity() {
+			return Float.NaN;
+		}
+
+		/**
+		 * Whether this animation overrides both in-place methods, and so can be used by TES' columnar particle storage without going through the {@link Vector3f}-based adapters
+		 */
+		public final boolean hasInPlaceForm() {
+			return HAS_IN_PLACE_FORM.get(getClass());
+		}
+
+		private static void writeVector(Vector3f vector, float[] array, int index) {
+			array[index] = vector.x();
+			array[index + 1] = vector.y();
+			array[index + 2] = vector.z();
+		}
 	}
 }
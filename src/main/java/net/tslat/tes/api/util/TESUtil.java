@@ -30,13 +30,119 @@ public class TESUtil {
 
 	private static final Map<Class<? extends LivingEntity>, TESEntityType> ENTITY_TYPE_MAP = new Object2ObjectOpenHashMap<>();
 
+	private static final long[] POW10 = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000};
+	private static final int CACHED_ROUNDED_VALUE_RANGE = 2048;
+	private static final String[][] ROUNDED_DECIMAL_CACHE = new String[POW10.length][CACHED_ROUNDED_VALUE_RANGE * 2];
+	private static final ThreadLocal<StringBuilder> DECIMAL_BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(16));
+
 	/**
-	 * Round the provided number to the nearest decimal place, trimming trailing zeroes as needed
+	 * Round the provided number to the nearest decimal place, trimming trailing zeroes as needed.<br>
+	 * Commonly-used results are cached, so repeated calls for the same small values do not allocate.<br>
+	 * When the result is only going to be joined into a larger string, {@link TESUtil#appendRoundedDecimal} avoids the intermediate String
 	 * @param value The value to round
 	 * @param decimals The number of decimals to round the value to at minimum
 	 * @return The rounded value, as a String
 	 */
 	public static String roundToDecimal(double value, int decimals) {
+		if (decimals < 0 || decimals >= POW10.length)
+			return formatRoundedFloat(value, decimals);
+
+		long rounded = Math.round(value * POW10[decimals]);
+
+		if (!canFormatDirectly(rounded, decimals))
+			return formatRoundedFloat(value, decimals);
+
+		if (rounded >= -CACHED_ROUNDED_VALUE_RANGE && rounded < CACHED_ROUNDED_VALUE_RANGE) {
+			String[] cache = ROUNDED_DECIMAL_CACHE[decimals];
+			int cacheIndex = (int)rounded + CACHED_ROUNDED_VALUE_RANGE;
+			String cached = cache[cacheIndex];
+
+			if (cached == null)
+				cache[cacheIndex] = cached = formatRounded(rounded, decimals);
+
+			return cached;
+		}
+
+		return formatRounded(rounded, decimals);
+	}
+
+	/**
+	 * Round the provided number to the nearest decimal place, trimming trailing zeroes as needed, and append it to the given {@link StringBuilder}.<br>
+	 * Produces the same output as {@link TESUtil#roundToDecimal}, but without creating a new String for callers that can work with a {@link CharSequence}
+	 * @param builder The builder to append to
+	 * @param value The value to round
+	 * @param decimals The number of decimals to round the value to at minimum
+	 * @return The provided builder
+	 */
+	public static StringBuilder appendRoundedDecimal(StringBuilder builder, double value, int decimals) {
+		if (decimals < 0 || decimals >= POW10.length)
+			return builder.append(formatRoundedFloat(value, decimals));
+
+		long rounded = Math.round(value * POW10[decimals]);
+
+		if (!canFormatDirectly(rounded, decimals))
+			return builder.append(formatRoundedFloat(value, decimals));
+
+		return appendRounded(builder, rounded, decimals);
+	}
+
+	/**
+	 * Whether the given pre-rounded value can be formatted digit-by-digit while matching the output of {@link Float#toString}.<br>
+	 * Values with more than 6 significant digits may not survive the round-trip through float precision, and non-whole values under 0.001 are formatted in scientific notation.<br>
+	 * {@link Long#MIN_VALUE} (from rounding values at or below -9.22e18, including negative infinity) has no positive magnitude, so is also excluded
+	 */
+	private static boolean canFormatDirectly(long rounded, int decimals) {
+		long magnitude = Math.abs(rounded);
+
+		if (magnitude >= 1000000 || magnitude < 0)
+			return false;
+
+		return rounded % POW10[decimals] == 0 || magnitude * 1000 >= POW10[decimals];
+	}
+
+	private static String formatRounded(long rounded, int decimals) {
+		StringBuilder builder = DECIMAL_BUFFER.get();
+
+		builder.setLength(0);
+
+		return appendRounded(builder, rounded, decimals).toString();
+	}
+
+	private static StringBuilder appendRounded(StringBuilder builder, long rounded, int decimals) {
+		if (rounded < 0) {
+			builder.append('-');
+
+			rounded = -rounded;
+		}
+
+		long fraction = rounded % POW10[decimals];
+
+		builder.append(rounded / POW10[decimals]);
+
+		if (fraction == 0)
+			return builder;
+
+		int fractionDigits = decimals;
+
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			fractionDigits--;
+		}
+
+		builder.append('.');
+
+		for (long place = POW10[fractionDigits - 1]; place > fraction; place /= 10) {
+			builder.append('0');
+		}
+
+		return builder.append(fraction);
+	}
+
+	/**
+	 * Round and format the value via float conversion.<br>
+	 * Used for values outside the range that can be formatted directly
+	 */
+	private static String formatRoundedFloat(double value, int decimals) {
 		float val = Math.round(value * (float)Math.pow(10, decimals)) / (float)Math.pow(10, decimals);
 
 		if (((int)val) == val)
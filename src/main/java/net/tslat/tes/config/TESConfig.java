@@ -3,19 +3,32 @@ package net.tslat.tes.config;
 import net.minecraftforge.common.ForgeConfigSpec;
 import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.config.ModConfig;
+import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import net.tslat.tes.api.TESConstants;
 import net.tslat.tes.api.TESHUDActivation;
 import net.tslat.tes.core.hud.TESHud;
 import net.tslat.tes.core.state.TESEntityTracking;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Interface for TES' configurable settings.
  * Use this interface where possible for config access as it is natively cross-platform compatible and ensures correct value retrieval
  */
 public final class TESConfig {
+	private static final AtomicInteger GENERATION = new AtomicInteger();
+
 	private final ForgeConfigSpec.DoubleValue entityTrackingDistance;
 	private final ForgeConfigSpec.IntValue cacheCleanFrequency;
+	private final ForgeConfigSpec.IntValue cacheSweepBudget;
+	private final ForgeConfigSpec.IntValue maxTrackedEntities;
+	private final ForgeConfigSpec.DoubleValue nearUpdateTierDistance;
+	private final ForgeConfigSpec.DoubleValue midUpdateTierDistance;
+	private final ForgeConfigSpec.IntValue midUpdateTierInterval;
+	private final ForgeConfigSpec.IntValue farUpdateTierInterval;
+	private final ForgeConfigSpec.BooleanValue parallelStateUpdates;
+	private final ForgeConfigSpec.IntValue parallelStateUpdateThreshold;
 
 	private final ForgeConfigSpec.BooleanValue hudEnabled;
 	private final ForgeConfigSpec.DoubleValue hudTargetDistance;
@@ -53,6 +66,11 @@ public final class TESConfig {
 	private final ForgeConfigSpec.BooleanValue verbalHealthParticles;
 	private final ForgeConfigSpec.IntValue damageParticleColour;
 	private final ForgeConfigSpec.IntValue healParticleColour;
+	private final ForgeConfigSpec.IntValue maxParticles;
+	private final ForgeConfigSpec.IntValue maxParticlesPerEntity;
+	private final ForgeConfigSpec.IntValue particleMergeWindow;
+	private final ForgeConfigSpec.DoubleValue particleRenderDistance;
+	private final ForgeConfigSpec.BooleanValue particleOverlapAvoidance;
 
 	public TESConfig(final ForgeConfigSpec.Builder config) {
 		config.push("General Settings");
@@ -63,10 +81,57 @@ public final class TESConfig {
 				.defineInRange("entityTrackingDistance", 64d, 8, 512);
 
 		this.cacheCleanFrequency = config
-				.comment("How frequently TES should clear out its tracking cache. Generally this should stay at default, but if you are noticing issues you can try adjusting it")
+				.comment("How frequently (in ticks) TES should have fully cleared out its tracking cache. Generally this should stay at default, but if you are noticing issues you can try adjusting it",
+						"The cache is swept incrementally, so this is the longest a full pass over the cache can take rather than a single large clean-up")
 				.translation("config.tes.general.cacheCleanFrequency")
 				.defineInRange("cacheCleanFrequency", 400, 20, Integer.MAX_VALUE);
 
+		this.cacheSweepBudget = config
+				.comment("The minimum number of cached entity states TES should check for validity each tick",
+						"Higher values clean up stale entries sooner, at a higher per-tick cost")
+				.translation("config.tes.general.cacheSweepBudget")
+				.defineInRange("cacheSweepBudget", 32, 1, Integer.MAX_VALUE);
+
+		this.maxTrackedEntities = config
+				.comment("The maximum number of entities TES should track at once. Once reached, the entities rendered least recently are dropped first",
+						"Entities already rendered in the current frame are never dropped, so any entities beyond the limit are left untracked until room frees up",
+						"Lower values reduce TES' memory usage in crowded areas")
+				.translation("config.tes.general.maxTrackedEntities")
+				.defineInRange("maxTrackedEntities", 2048, 16, Integer.MAX_VALUE);
+
+		this.nearUpdateTierDistance = config
+				.comment("Entities within this distance (in blocks) of the camera have their status updated every tick")
+				.translation("config.tes.general.nearUpdateTierDistance")
+				.defineInRange("nearUpdateTierDistance", 24d, 0, 512);
+
+		this.midUpdateTierDistance = config
+				.comment("Entities beyond the near tier but within this distance (in blocks) of the camera have their status updated at the mid-tier rate",
+						"Entities further than this are updated at the far-tier rate")
+				.translation("config.tes.general.midUpdateTierDistance")
+				.defineInRange("midUpdateTierDistance", 64d, 0, 512);
+
+		this.midUpdateTierInterval = config
+				.comment("How frequently (in ticks) entities in the mid update tier should have their status updated")
+				.translation("config.tes.general.midUpdateTierInterval")
+				.defineInRange("midUpdateTierInterval", 4, 1, 100);
+
+		this.farUpdateTierInterval = config
+				.comment("How frequently (in ticks) entities in the far update tier should have their status updated")
+				.translation("config.tes.general.farUpdateTierInterval")
+				.defineInRange("farUpdateTierInterval", 10, 1, 100);
+
+		this.parallelStateUpdates = config
+				.comment("Whether TES should split its per-tick entity status updates across multiple threads when there are a large number of entities to update",
+						"Only useful with very large numbers of entities nearby. Health changes are still handled on the main thread")
+				.translation("config.tes.general.parallelStateUpdates")
+				.define("parallelStateUpdates", false);
+
+		this.parallelStateUpdateThreshold = config
+				.comment("How many entity statuses need updating in a single tick before TES will update them in parallel, if enabled",
+						"Below this, the cost of handing the work to other threads outweighs the gain. Lower it only if you have measured a benefit on your own hardware")
+				.translation("config.tes.general.parallelStateUpdateThreshold")
+				.defineInRange("parallelStateUpdateThreshold", 2048, 0, Integer.MAX_VALUE);
+
 		config.pop();
 		config.push("HUD Settings");
 
@@ -267,6 +332,36 @@ public final class TESConfig {
 				.translation("config.tes.particle.healParticleColour")
 				.defineInRange("healParticleColour", 0xFF00FF00, Integer.MIN_VALUE, Integer.MAX_VALUE);
 
+		this.maxParticles = config
+				.comment("The maximum number of TES particles that can be alive at once",
+						"When full, the lowest-priority numeric particles (small, old, or far away) are replaced first, and particles for your current HUD target are kept")
+				.translation("config.tes.particle.maxParticles")
+				.defineInRange("maxParticles", 256, 1, 8192);
+
+		this.maxParticlesPerEntity = config
+				.comment("The maximum number of numeric TES particles that can be alive at once for a single entity",
+						"When full, the lowest-priority particle for that entity is replaced first")
+				.translation("config.tes.particle.maxParticlesPerEntity")
+				.defineInRange("maxParticlesPerEntity", 8, 1, 256);
+
+		this.particleMergeWindow = config
+				.comment("How many ticks after a damage or heal particle appears that further damage or healing on the same entity is added into it instead of making a new particle",
+						"Useful for reducing particle spam from damage-over-time and regeneration effects. Set to 0 to disable merging",
+						"Particles only last 10 ticks, so this is capped at 10")
+				.translation("config.tes.particle.mergeWindow")
+				.defineInRange("particleMergeWindow", 0, 0, 10);
+
+		this.particleRenderDistance = config
+				.comment("How far away (in blocks) numeric TES particles can be from the camera and still render",
+						"Particles further away than this are not animated until they are back in range")
+				.translation("config.tes.particle.renderDistance")
+				.defineInRange("particleRenderDistance", 64d, 1d, 512d);
+
+		this.particleOverlapAvoidance = config
+				.comment("Whether TES should nudge overlapping numeric particles apart on-screen so that they stay readable when many appear in the same place")
+				.translation("config.tes.particle.overlapAvoidance")
+				.define("particleOverlapAvoidance", false);
+
 		config.pop();
 	}
 
@@ -278,12 +373,68 @@ public final class TESConfig {
 	}
 
 	/**
-	 * Gets the tick-value for how frequently TES should clean up its {@link TESEntityTracking#ENTITY_STATES state cache}
+	 * Gets the tick-value for how frequently TES should have fully swept its {@link TESEntityTracking#ENTITY_STATES state cache}
 	 */
 	public int getCacheCleanFrequency() {
 		return this.cacheCleanFrequency.get();
 	}
 
+	/**
+	 * Gets the minimum number of cached entity states TES should validate each tick
+	 */
+	public int getCacheSweepBudget() {
+		return this.cacheSweepBudget.get();
+	}
+
+	/**
+	 * Gets the maximum number of entities TES should track at once
+	 */
+	public int getMaxTrackedEntities() {
+		return this.maxTrackedEntities.get();
+	}
+
+	/**
+	 * Gets the distance (in blocks) within which entities have their status updated every tick
+	 */
+	public double getNearUpdateTierDistance() {
+		return this.nearUpdateTierDistance.get();
+	}
+
+	/**
+	 * Gets the distance (in blocks) within which entities outside the near tier have their status updated at the {@link TESConfig#getMidUpdateTierInterval() mid-tier rate}
+	 */
+	public double getMidUpdateTierDistance() {
+		return this.midUpdateTierDistance.get();
+	}
+
+	/**
+	 * Gets how frequently (in ticks) entities in the mid update tier have their status updated
+	 */
+	public int getMidUpdateTierInterval() {
+		return this.midUpdateTierInterval.get();
+	}
+
+	/**
+	 * Gets how frequently (in ticks) entities beyond the mid update tier have their status updated
+	 */
+	public int getFarUpdateTierInterval() {
+		return this.farUpdateTierInterval.get();
+	}
+
+	/**
+	 * Whether TES should update entity statuses in parallel when there are enough of them to update in a single tick
+	 */
+	public boolean parallelStateUpdates() {
+		return this.parallelStateUpdates.get();
+	}
+
+	/**
+	 * Gets how many entity statuses need updating in a single tick before they are updated in parallel
+	 */
+	public int getParallelStateUpdateThreshold() {
+		return this.parallelStateUpdateThreshold.get();
+	}
+
 	/**
 	 * Whether the TES HUD should be rendered or not
 	 */
@@ -539,10 +690,60 @@ public final class TESConfig {
 		return this.healParticleColour.get();
 	}
 
+	/**
+	 * Get the maximum number of TES particles that can be alive at once
+	 */
+	public int getMaxParticles() {
+		return this.maxParticles.get();
+	}
+
+	/**
+	 * Get the maximum number of numeric TES particles that can be alive at once for a single entity
+	 */
+	public int getMaxParticlesPerEntity() {
+		return this.maxParticlesPerEntity.get();
+	}
+
+	/**
+	 * Get how many ticks after a damage or heal particle appears that further changes on the same entity are merged into it.<br>
+	 * A value of 0 means particles are never merged
+	 */
+	public int getParticleMergeWindow() {
+		return this.particleMergeWindow.get();
+	}
+
+	/**
+	 * Get how far away (in blocks) numeric TES particles can be from the camera and still render
+	 */
+	public double getParticleRenderDistance() {
+		return this.particleRenderDistance.get();
+	}
+
+	/**
+	 * Whether TES should nudge overlapping numeric particles apart on-screen
+	 */
+	public boolean particleOverlapAvoidance() {
+		return this.particleOverlapAvoidance.get();
+	}
+
 	public static void init() {
 		Pair<TESConfig, ForgeConfigSpec> configSpec = new ForgeConfigSpec.Builder().configure(TESConfig::new);
 
 		ModLoadingContext.get().registerConfig(ModConfig.Type.COMMON, configSpec.getRight());
 		TESConstants.setConfig(configSpec.getLeft());
+		FMLJavaModLoadingContext.get().getModEventBus().addListener(TESConfig::onReload);
+	}
+
+	/**
+	 * Get the current config generation.<br>
+	 * This increments each time the config is reloaded, so values derived from the config can be cached against it.<br>
+	 * Reloads can happen off the render thread, so the generation is held atomically to make sure caches read on the render thread see the change
+	 */
+	public static int getGeneration() {
+		return GENERATION.get();
+	}
+
+	private static void onReload(final ModConfig.Reloading ev) {
+		GENERATION.incrementAndGet();
 	}
 }
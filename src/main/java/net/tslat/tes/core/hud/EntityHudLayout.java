@@ -0,0 +1,271 @@
+package net.tslat.tes.core.hud;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.entity.CreatureAttribute;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.resources.IReloadableResourceManager;
+import net.minecraft.resources.IResourceManagerReloadListener;
+import net.tslat.tes.api.TESAPI;
+import net.tslat.tes.api.util.TESUtil;
+import net.tslat.tes.config.TESConfig;
+
+/**
+ * Retained layout for the built-in HUD elements of a single entity.<br>
+ * Holds the strings, text widths, icon flags and effect grid dimensions that the built-in elements render with, so that they don't have to be recomputed each frame.<br>
+ * Each part of the layout is only rebuilt when one of its inputs changes:
+ * <ul>
+ *     <li>Health text - current or max health</li>
+ *     <li>Armour text - armour or armour toughness</li>
+ *     <li>Effect grid - the effect set's {@link net.tslat.tes.core.state.EntityState#getEffectsVersion version}</li>
+ *     <li>Everything - the {@link TESConfig#getGeneration config generation}, or a resource reload</li>
+ * </ul>
+ * Entity icons are resolved once per entity, and are only re-resolved after the layout is {@link EntityHudLayout#invalidate invalidated}.<br>
+ * Layouts fetched through {@link EntityHudLayout#updateForFrame} only check their inputs once per frame, however many elements ask for them
+ */
+public final class EntityHudLayout {
+	private static final StringBuilder TEXT_BUILDER = new StringBuilder(16);
+	private static int RESOURCE_GENERATION = 0;
+	private static long FRAME = 0;
+
+	private long updatedFrame = -1;
+	private int configGeneration = -1;
+	private int resourceGeneration = -1;
+	private int effectsVersion = -1;
+	private float health = Float.NaN;
+	private float maxHealth = Float.NaN;
+	private int armour = -1;
+	private float toughness = Float.NaN;
+	private boolean iconsResolved = false;
+
+	private String healthText = "";
+	private float healthTextWidth = 0;
+
+	private String armourText = "";
+	private String toughnessText = "";
+	private int inWorldArmourWidth = 0;
+
+	private boolean fireImmune = false;
+	private boolean meleeMob = false;
+	private boolean rangedMob = false;
+	private int mobTypeU = -1;
+
+	private int effectCount = 0;
+	private final EffectGrid hudEffectGrid = new EffectGrid();
+	private final EffectGrid inWorldEffectGrid = new EffectGrid();
+
+	/**
+	 * Register the resource reload listener that marks all layouts for rebuilding, so that text widths are re-measured against the reloaded font
+	 */
+	public static void registerReloadListener() {
+		((IReloadableResourceManager)Minecraft.getInstance().getResourceManager()).registerReloadListener((IResourceManagerReloadListener)manager -> RESOURCE_GENERATION++);
+	}
+
+	/**
+	 * Advance the frame counter used by {@link EntityHudLayout#updateForFrame}.<br>
+	 * Called once at the start of each rendered frame
+	 */
+	public static void nextFrame() {
+		FRAME++;
+	}
+
+	/**
+	 * Mark this layout for a full rebuild on next {@link EntityHudLayout#update update}, including re-resolving the entity's icons.<br>
+	 * Should be called whenever the layout is re-used for a different entity
+	 */
+	public void invalidate() {
+		this.updatedFrame = -1;
+		this.configGeneration = -1;
+		this.effectsVersion = -1;
+		this.health = Float.NaN;
+		this.iconsResolved = false;
+	}
+
+	/**
+	 * {@link EntityHudLayout#update Update} this layout, unless it has already been updated this frame
+	 * @return this
+	 */
+	public EntityHudLayout updateForFrame(LivingEntity entity, float health, int effectCount, int effectsVersion, FontRenderer fontRenderer) {
+		if (this.updatedFrame == FRAME)
+			return this;
+
+		this.updatedFrame = FRAME;
+
+		return update(entity, health, effectCount, effectsVersion, fontRenderer);
+	}
+
+	/**
+	 * Bring this layout up to date with the given entity's current values, rebuilding only the parts whose inputs have changed
+	 * @param entity The entity this layout is for
+	 * @param health The entity's tracked health value
+	 * @param effectCount The number of effects the entity has
+	 * @param effectsVersion The version of the entity's effect set, used to detect changes to the set
+	 * @param fontRenderer The font renderer to measure text with
+	 * @return this
+	 */
+	public EntityHudLayout update(LivingEntity entity, float health, int effectCount, int effectsVersion, FontRenderer fontRenderer) {
+		float maxHealth = entity.getMaxHealth();
+		int armour = TESUtil.getArmour(entity);
+		float toughness = TESUtil.getArmourToughness(entity);
+		int configGeneration = TESConfig.getGeneration();
+		boolean fullRebuild = configGeneration != this.configGeneration || RESOURCE_GENERATION != this.resourceGeneration;
+
+		if (fullRebuild || health != this.health || maxHealth != this.maxHealth)
+			updateHealth(health, maxHealth, fontRenderer);
+
+		if (fullRebuild || armour != this.armour || toughness != this.toughness)
+			updateArmour(armour, toughness, fontRenderer);
+
+		if (fullRebuild || effectsVersion != this.effectsVersion) {
+			this.effectsVersion = effectsVersion;
+			this.effectCount = effectCount;
+
+			this.hudEffectGrid.update(effectCount, TESAPI.getConfig().hudHealthBarLength());
+			this.inWorldEffectGrid.update(effectCount, TESAPI.getConfig().inWorldBarsLength());
+		}
+
+		if (!this.iconsResolved)
+			resolveIcons(entity);
+
+		this.configGeneration = configGeneration;
+		this.resourceGeneration = RESOURCE_GENERATION;
+
+		return this;
+	}
+
+	private void updateHealth(float health, float maxHealth, FontRenderer fontRenderer) {
+		this.health = health;
+		this.maxHealth = maxHealth;
+		TEXT_BUILDER.setLength(0);
+		TESUtil.appendRoundedDecimal(TEXT_BUILDER, health, 1).append('/');
+
+		this.healthText = TESUtil.appendRoundedDecimal(TEXT_BUILDER, maxHealth, 1).toString();
+		this.healthTextWidth = fontRenderer.width(this.healthText);
+	}
+
+	private void updateArmour(int armour, float toughness, FontRenderer fontRenderer) {
+		this.armour = armour;
+		this.toughness = toughness;
+		this.armourText = "x" + armour;
+		TEXT_BUILDER.setLength(0);
+
+		this.toughnessText = TESUtil.appendRoundedDecimal(TEXT_BUILDER.append('x'), toughness, 1).toString();
+		this.inWorldArmourWidth = toughness > 0 ? 43 + fontRenderer.width(this.toughnessText) : fontRenderer.width(this.armourText) + 10;
+	}
+
+	private void resolveIcons(LivingEntity entity) {
+		CreatureAttribute mobType = entity.getMobType();
+
+		this.fireImmune = TESUtil.isFireImmune(entity);
+		this.meleeMob = TESUtil.isMeleeMob(entity);
+		this.rangedMob = TESUtil.isRangedMob(entity);
+
+		if (mobType == CreatureAttribute.UNDEFINED) {
+			this.mobTypeU = -1;
+		}
+		else {
+			this.mobTypeU = mobType == CreatureAttribute.WATER ? 24 : (mobType == CreatureAttribute.ILLAGER ? 16 : (mobType == CreatureAttribute.ARTHROPOD ? 8 : 0));
+		}
+
+		this.iconsResolved = true;
+	}
+
+	public String getHealthText() {
+		return this.healthText;
+	}
+
+	public float getHealthTextWidth() {
+		return this.healthTextWidth;
+	}
+
+	public int getArmour() {
+		return this.armour;
+	}
+
+	public float getToughness() {
+		return this.toughness;
+	}
+
+	public String getArmourText() {
+		return this.armourText;
+	}
+
+	public String getToughnessText() {
+		return this.toughnessText;
+	}
+
+	/**
+	 * Get the total width of the armour element when rendered in-world, for centring
+	 */
+	public int getInWorldArmourWidth() {
+		return this.inWorldArmourWidth;
+	}
+
+	public boolean isFireImmune() {
+		return this.fireImmune;
+	}
+
+	public boolean isMeleeMob() {
+		return this.meleeMob;
+	}
+
+	public boolean isRangedMob() {
+		return this.rangedMob;
+	}
+
+	/**
+	 * Get the u coordinate of the entity's mob type icon, or -1 if it has no mob type icon
+	 */
+	public int getMobTypeU() {
+		return this.mobTypeU;
+	}
+
+	public int getEffectCount() {
+		return this.effectCount;
+	}
+
+	public EffectGrid getEffectGrid(boolean inWorldHud) {
+		return inWorldHud ? this.inWorldEffectGrid : this.hudEffectGrid;
+	}
+
+	/**
+	 * Dimensions of the effect icon grid for a given bar length
+	 */
+	public static final class EffectGrid {
+		private int iconsPerRow = 1;
+		private int rows = 0;
+		private int inWorldYOffset = 0;
+		private int lastRowInWorldX = 0;
+
+		private void update(int effectCount, int barLength) {
+			float maxX = barLength * 2f;
+
+			this.iconsPerRow = Math.max(1, (int)Math.floor(maxX / 18f));
+			this.rows = (int)Math.ceil(effectCount / (float)this.iconsPerRow);
+			this.inWorldYOffset = (int)Math.floor(effectCount * 18 / maxX) * -18;
+			this.lastRowInWorldX = (effectCount % this.iconsPerRow) * -9;
+		}
+
+		public int getIconsPerRow() {
+			return this.iconsPerRow;
+		}
+
+		public int getRows() {
+			return this.rows;
+		}
+
+		/**
+		 * Get the vertical offset of the grid when rendered in-world, so that it grows upwards
+		 */
+		public int getInWorldYOffset() {
+			return this.inWorldYOffset;
+		}
+
+		/**
+		 * Get the starting x position of the last row when rendered in-world, so that it is centred
+		 */
+		public int getLastRowInWorldX() {
+			return this.lastRowInWorldX;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package net.tslat.tes.core.hud;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.IRenderTypeBuffer;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.WorldVertexBufferUploader;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.vector.Matrix4f;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Frame-wide batch for the built-in in-world HUD elements.<br>
+ * While the batch is {@link InWorldHudBatch#isActive active}, the built-in elements write their quads into one vertex buffer per texture instead of drawing them immediately, with their opacity baked into the vertex colours.<br>
+ * Untextured quads are collected into a separate buffer, and text into a shared {@link IRenderTypeBuffer} that keeps a fixed buffer for each text {@link RenderType}, so that switching between font pages doesn't flush the text drawn so far.<br>
+ * When the batch is {@link InWorldHudBatch#end ended}, each buffer is drawn once, so the draw count depends on the number of textures used rather than the number of entities rendered.<br>
+ * Elements added by other mods are unaffected, and continue to draw immediately
+ */
+public final class InWorldHudBatch {
+	private static final Object2ObjectLinkedOpenHashMap<ResourceLocation, TextureBatch> TEXTURED_BATCHES = new Object2ObjectLinkedOpenHashMap<>();
+	private static final BufferBuilder UNTEXTURED_BUFFER = new BufferBuilder(256);
+	private static final Object2ObjectLinkedOpenHashMap<RenderType, BufferBuilder> TEXT_BUFFERS = new Object2ObjectLinkedOpenHashMap<>();
+	private static final IRenderTypeBuffer.Impl TEXT_BUFFER_SOURCE = IRenderTypeBuffer.immediate(TEXT_BUFFERS, new BufferBuilder(256));
+	private static final ObjectOpenHashSet<RenderType> USED_TEXT_TYPES = new ObjectOpenHashSet<>();
+	private static final IRenderTypeBuffer TEXT_BUFFER = renderType -> {
+		if (!TEXT_BUFFERS.containsKey(renderType))
+			TEXT_BUFFERS.put(renderType, new BufferBuilder(256));
+
+		USED_TEXT_TYPES.add(renderType);
+
+		return TEXT_BUFFER_SOURCE.getBuffer(renderType);
+	};
+	private static final float ALPHA_CUTOFF = 0.003921569f;
+
+	private static boolean ACTIVE = false;
+	private static boolean UNTEXTURED_BUILDING = false;
+	private static int LAST_FRAME_DRAW_CALLS = 0;
+
+	/**
+	 * Start collecting quads for a new frame
+	 */
+	public static void begin() {
+		ACTIVE = true;
+	}
+
+	/**
+	 * Whether the batch is currently collecting quads, and built-in elements should write into it rather than drawing immediately
+	 */
+	public static boolean isActive() {
+		return ACTIVE;
+	}
+
+	/**
+	 * Add a textured quad to the batch for the given texture
+	 * @param pose The pose to transform the quad with
+	 * @param texture The texture the quad samples from
+	 * @param x The x position of the quad
+	 * @param y The y position of the quad
+	 * @param width The width of the quad
+	 * @param height The height of the quad
+	 * @param u The x position on the texture to sample from
+	 * @param v The y position on the texture to sample from
+	 * @param uWidth The width of the region on the texture to sample
+	 * @param vHeight The height of the region on the texture to sample
+	 * @param textureWidth The width of the entire texture
+	 * @param textureHeight The height of the entire texture
+	 * @param alpha The opacity of the quad
+	 */
+	public static void blit(Matrix4f pose, ResourceLocation texture, int x, int y, int width, int height, float u, float v, int uWidth, int vHeight, int textureWidth, int textureHeight, float alpha) {
+		quad(getTexturedBuffer(texture), pose, x, y, x + width, y + height, u / textureWidth, (u + uWidth) / textureWidth, v / textureHeight, (v + vHeight) / textureHeight, alpha);
+	}
+
+	/**
+	 * Add a quad showing the given sprite to the batch for the sprite's atlas
+	 */
+	public static void blitSprite(Matrix4f pose, TextureAtlasSprite sprite, int x, int y, int width, int height, float alpha) {
+		quad(getTexturedBuffer(sprite.atlas().location()), pose, x, y, x + width, y + height, sprite.getU0(), sprite.getU1(), sprite.getV0(), sprite.getV1(), alpha);
+	}
+
+	/**
+	 * Add a solid-colour quad to the batch
+	 * @param colour The ARGB colour of the quad
+	 */
+	public static void fill(Matrix4f pose, int x, int y, int width, int height, int colour) {
+		if (!UNTEXTURED_BUILDING) {
+			UNTEXTURED_BUFFER.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_COLOR);
+
+			UNTEXTURED_BUILDING = true;
+		}
+
+		int alpha = colour >> 24 & 255;
+		int red = colour >> 16 & 255;
+		int green = colour >> 8 & 255;
+		int blue = colour & 255;
+
+		UNTEXTURED_BUFFER.vertex(pose, x, y + height, 0).color(red, green, blue, alpha).endVertex();
+		UNTEXTURED_BUFFER.vertex(pose, x + width, y + height, 0).color(red, green, blue, alpha).endVertex();
+		UNTEXTURED_BUFFER.vertex(pose, x + width, y, 0).color(red, green, blue, alpha).endVertex();
+		UNTEXTURED_BUFFER.vertex(pose, x, y, 0).color(red, green, blue, alpha).endVertex();
+	}
+
+	/**
+	 * Get the buffer source that text for this batch should be written into
+	 */
+	public static IRenderTypeBuffer getTextBuffer() {
+		return TEXT_BUFFER;
+	}
+
+	/**
+	 * Stop collecting, and draw everything collected since the batch {@link InWorldHudBatch#begin began}.<br>
+	 * Textured quads are drawn first in the order their textures were first used, then untextured quads, then text.<br>
+	 * Quads are drawn with an alpha cutoff low enough that only fully transparent pixels are discarded, so that a low HUD opacity doesn't hide the batch entirely. The alpha test itself is left as it was, and its function is reset to the default afterwards
+	 */
+	public static void end() {
+		ACTIVE = false;
+		int drawCalls = 0;
+
+		RenderSystem.enableBlend();
+		RenderSystem.defaultBlendFunc();
+		RenderSystem.enableDepthTest();
+		RenderSystem.alphaFunc(GL11.GL_GREATER, ALPHA_CUTOFF);
+		RenderSystem.color4f(1, 1, 1, 1);
+
+		for (TextureBatch batch : TEXTURED_BATCHES.values()) {
+			if (!batch.building)
+				continue;
+
+			batch.buffer.end();
+			Minecraft.getInstance().textureManager.bind(batch.texture);
+			WorldVertexBufferUploader.end(batch.buffer);
+
+			batch.building = false;
+			drawCalls++;
+		}
+
+		if (UNTEXTURED_BUILDING) {
+			RenderSystem.disableTexture();
+			UNTEXTURED_BUFFER.end();
+			WorldVertexBufferUploader.end(UNTEXTURED_BUFFER);
+			RenderSystem.enableTexture();
+
+			UNTEXTURED_BUILDING = false;
+			drawCalls++;
+		}
+
+		if (!USED_TEXT_TYPES.isEmpty()) {
+			TEXT_BUFFER_SOURCE.endBatch();
+
+			drawCalls += USED_TEXT_TYPES.size();
+			USED_TEXT_TYPES.clear();
+		}
+
+		RenderSystem.defaultAlphaFunc();
+
+		LAST_FRAME_DRAW_CALLS = drawCalls;
+	}
+
+	/**
+	 * Get the number of batches drawn for the in-world HUD in the last rendered frame.<br>
+	 * Text is counted as one batch per text {@link RenderType} used
+	 */
+	public static int getLastFrameDrawCalls() {
+		return LAST_FRAME_DRAW_CALLS;
+	}
+
+	private static BufferBuilder getTexturedBuffer(ResourceLocation texture) {
+		TextureBatch batch = TEXTURED_BATCHES.get(texture);
+
+		if (batch == null)
+			TEXTURED_BATCHES.put(texture, batch = new TextureBatch(texture));
+
+		if (!batch.building) {
+			batch.buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_COLOR_TEX);
+
+			batch.building = true;
+		}
+
+		return batch.buffer;
+	}
+
+	private static void quad(BufferBuilder buffer, Matrix4f pose, int minX, int minY, int maxX, int maxY, float minU, float maxU, float minV, float maxV, float alpha) {
+		buffer.vertex(pose, minX, maxY, 0).color(1f, 1f, 1f, alpha).uv(minU, maxV).endVertex();
+		buffer.vertex(pose, maxX, maxY, 0).color(1f, 1f, 1f, alpha).uv(maxU, maxV).endVertex();
+		buffer.vertex(pose, maxX, minY, 0).color(1f, 1f, 1f, alpha).uv(maxU, minV).endVertex();
+		buffer.vertex(pose, minX, minY, 0).color(1f, 1f, 1f, alpha).uv(minU, minV).endVertex();
+	}
+
+	private static final class TextureBatch {
+		private final ResourceLocation texture;
+		private final BufferBuilder buffer = new BufferBuilder(256);
+		private boolean building = false;
+
+		private TextureBatch(ResourceLocation texture) {
+			this.texture = texture;
+		}
+	}
+}
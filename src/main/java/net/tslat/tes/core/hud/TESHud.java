@@ -2,6 +2,8 @@ package net.tslat.tes.core.hud;
 
 import com.mojang.blaze3d.matrix.MatrixStack;
 import com.mojang.blaze3d.systems.RenderSystem;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
 import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.Entity;
@@ -26,6 +28,7 @@ import net.tslat.tes.core.state.TESEntityTracking;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -42,6 +45,9 @@ public class TESHud {
 			map.put("Effects", BuiltinHudElements::renderEntityEffects);
 	});
 	private static TESHudElement[] INVERSE_ELEMENTS = buildInverseElementArray(ELEMENTS.values());
+	private static double[] IN_WORLD_DISTANCES = new double[0];
+	private static int[] IN_WORLD_ORDER = new int[0];
+	private static final IntComparator FURTHEST_FIRST = (index1, index2) -> Double.compare(IN_WORLD_DISTANCES[index2], IN_WORLD_DISTANCES[index1]);
 	private static LivingEntity TARGET_ENTITY = null;
 	private static long TARGET_EXPIRY_TIME = -1L;
 
@@ -124,8 +130,59 @@ public class TESHud {
 		poseStack.popPose();
 	}
 
+	/**
+	 * Render the in-world HUD for all the given entities in one pass.<br>
+	 * Entities are rendered furthest-first, sorted on their distances computed once per frame, with the built-in elements written into an {@link InWorldHudBatch} and drawn together once all entities have been rendered
+	 */
+	public static void renderInWorld(MatrixStack poseStack, List<LivingEntity> entities, float partialTick) {
+		if (!TESAPI.getConfig().inWorldBarsEnabled() || entities.isEmpty())
+			return;
+
+		Minecraft mc = Minecraft.getInstance();
+		Vector3d cameraPos = mc.gameRenderer.getMainCamera().getPosition();
+		float hudOpacity = TESAPI.getConfig().inWorldHudOpacity();
+		int count = entities.size();
+
+		if (IN_WORLD_ORDER.length < count) {
+			IN_WORLD_ORDER = new int[count * 2];
+			IN_WORLD_DISTANCES = new double[count * 2];
+		}
+
+		for (int i = 0; i < count; i++) {
+			IN_WORLD_ORDER[i] = i;
+			IN_WORLD_DISTANCES[i] = entities.get(i).distanceToSqr(cameraPos);
+		}
+
+		IntArrays.quickSort(IN_WORLD_ORDER, 0, count, FURTHEST_FIRST);
+
+		RenderSystem.enableBlend();
+		RenderSystem.enableDepthTest();
+		RenderSystem.color4f(1, 1, 1, hudOpacity);
+		InWorldHudBatch.begin();
+
+		for (int i = 0; i < count; i++) {
+			renderEntityInWorld(poseStack, mc, entities.get(IN_WORLD_ORDER[i]), partialTick, hudOpacity);
+		}
+
+		InWorldHudBatch.end();
+		RenderSystem.color4f(1, 1, 1, 1);
+	}
+
 	public static void renderInWorld(MatrixStack poseStack, LivingEntity entity, float partialTick) {
-		if (!TESAPI.getConfig().inWorldBarsEnabled() || entity.isDeadOrDying() || (entity == Minecraft.getInstance().player && !TESAPI.getConfig().inWorldHudForSelf()))
+		if (!TESAPI.getConfig().inWorldBarsEnabled())
+			return;
+
+		float hudOpacity = TESAPI.getConfig().inWorldHudOpacity();
+
+		RenderSystem.enableBlend();
+		RenderSystem.enableDepthTest();
+		RenderSystem.color4f(1, 1, 1, hudOpacity);
+		renderEntityInWorld(poseStack, Minecraft.getInstance(), entity, partialTick, hudOpacity);
+		RenderSystem.color4f(1, 1, 1, 1);
+	}
+
+	private static void renderEntityInWorld(MatrixStack poseStack, Minecraft mc, LivingEntity entity, float partialTick, float hudOpacity) {
+		if (entity.isDeadOrDying() || (entity == mc.player && !TESAPI.getConfig().inWorldHudForSelf()))
 			return;
 
 		EntityState entityState = TESEntityTracking.getStateForEntity(entity);
@@ -133,8 +190,6 @@ public class TESHud {
 		if (entityState == null || !TESAPI.getConfig().inWorldHUDActivation().test(entityState))
 			return;
 
-		float hudOpacity = TESAPI.getConfig().inWorldHudOpacity();
-		Minecraft mc = Minecraft.getInstance();
 		Vector3d position = entity.getPosition(partialTick)
 				.subtract(mc.gameRenderer.getMainCamera().getPosition())
 				.add(mc.getEntityRenderDispatcher().getRenderer(entity).getRenderOffset(entity, partialTick));
@@ -147,9 +202,6 @@ public class TESHud {
 		TESClientUtil.positionFacingCamera(poseStack);
 		poseStack.mulPose(Vector3f.ZP.rotationDegrees(180));
 		poseStack.scale(0.02f, 0.02f, 0.02f);
-		RenderSystem.enableBlend();
-		RenderSystem.enableDepthTest();
-		RenderSystem.color4f(1, 1, 1, hudOpacity);
 
 		for (TESHudElement element : INVERSE_ELEMENTS) {
 			int offset = element.render(poseStack, mc, partialTick, entity, hudOpacity, true);
@@ -158,7 +210,6 @@ public class TESHud {
 				poseStack.translate(0, -(2 + offset), 0);
 		}
 
-		RenderSystem.color4f(1, 1, 1, 1);
 		poseStack.popPose();
 	}
 
@@ -4,17 +4,20 @@ import com.mojang.blaze3d.matrix.MatrixStack;
 import com.mojang.blaze3d.systems.RenderSystem;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.screen.Screen;
+import net.minecraft.client.renderer.LightTexture;
 import net.minecraft.client.renderer.texture.PotionSpriteUploader;
 import net.minecraft.client.renderer.texture.TextureAtlasSprite;
-import net.minecraft.entity.CreatureAttribute;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.vector.Matrix4f;
 import net.minecraft.util.registry.Registry;
+import net.minecraft.util.text.ITextComponent;
 import net.tslat.tes.api.TESAPI;
 import net.tslat.tes.api.TESConstants;
 import net.tslat.tes.api.util.TESClientUtil;
-import net.tslat.tes.api.util.TESUtil;
 import net.tslat.tes.config.TESConfig;
+import net.tslat.tes.core.hud.EntityHudLayout;
+import net.tslat.tes.core.hud.InWorldHudBatch;
 import net.tslat.tes.core.hud.TESHud;
 import net.tslat.tes.core.state.EntityState;
 import net.tslat.tes.core.state.TESEntityTracking;
@@ -25,13 +28,21 @@ import net.tslat.tes.core.state.TESEntityTracking;
 public final class BuiltinHudElements {
 	private static final ResourceLocation BARS_TEXTURE = new ResourceLocation("textures/gui/bars.png");
 	private static final ResourceLocation ICONS_TEXTURE = new ResourceLocation(TESConstants.MOD_ID, "textures/gui/tes_icons.png");
+	private static final EntityHudLayout FALLBACK_LAYOUT = new EntityHudLayout();
 
 	public static int renderEntityName(MatrixStack poseStack, Minecraft mc, float partialTick, LivingEntity entity, float opacity, boolean inWorldHud) {
 		if (inWorldHud) {
 			if (!TESAPI.getConfig().inWorldHudEntityName() && (!TESConstants.CONFIG.inWorldHudNameOverride() || !entity.hasCustomName()))
 				return 0;
 
-			TESClientUtil.renderCenteredText(entity.getDisplayName(), poseStack, mc.font, 0, 0, TESClientUtil.packColour((int)(opacity * 255f), 255, 255, 255));
+			if (InWorldHudBatch.isActive()) {
+				ITextComponent name = entity.getDisplayName();
+
+				mc.font.drawInBatch(name, mc.font.width(name) / -2f, 4, TESClientUtil.packColour((int)(opacity * 255f), 255, 255, 255), false, poseStack.last().pose(), InWorldHudBatch.getTextBuffer(), false, 0, LightTexture.FULL_BRIGHT);
+			}
+			else {
+				TESClientUtil.renderCenteredText(entity.getDisplayName(), poseStack, mc.font, 0, 0, TESClientUtil.packColour((int)(opacity * 255f), 255, 255, 255));
+			}
 		}
 		else {
 			if (!TESAPI.getConfig().hudEntityName())
@@ -58,6 +69,7 @@ public final class BuiltinHudElements {
 		float percentHealth = entityState.getHealth() / entity.getMaxHealth();
 		TESHud.BarRenderType renderType = inWorldHud ? config.inWorldBarsRenderType() : config.hudHealthRenderType();
 		boolean doSegments = inWorldHud ? config.inWorldBarsSegments() : config.hudHealthBarSegments();
+		boolean batched = inWorldHud && InWorldHudBatch.isActive();
 
 		poseStack.pushPose();
 		poseStack.translate(0, inWorldHud ? 4 : 1, 0);
@@ -65,31 +77,46 @@ public final class BuiltinHudElements {
 		if (inWorldHud)
 			poseStack.translate(barWidth * -0.5f, 0, 0);
 
-		TESClientUtil.prepRenderForTexture(BARS_TEXTURE);
-		RenderSystem.color4f(1, 1, 1, opacity);
+		if (!batched) {
+			TESClientUtil.prepRenderForTexture(BARS_TEXTURE);
+			RenderSystem.color4f(1, 1, 1, opacity);
+		}
 
 		if (renderType != TESHud.BarRenderType.NUMERIC) {
-			TESClientUtil.constructBarRender(poseStack, 0, 0, barWidth, 60, 1, false, opacity);
+			constructBarRender(poseStack, batched, barWidth, 60, 1, false, opacity);
 			poseStack.translate(0, 0, -0.001f);
 
 			if (percentTransitionHealth > percentHealth)
-				TESClientUtil.constructBarRender(poseStack, 0, 0, barWidth, uvY, entityState.getLastTransitionHealth() / entity.getMaxHealth(), false, opacity);
+				constructBarRender(poseStack, batched, barWidth, uvY, entityState.getLastTransitionHealth() / entity.getMaxHealth(), false, opacity);
 
 			poseStack.translate(0, 0, -0.001f);
 
-			RenderSystem.enableBlend();
-			TESClientUtil.constructBarRender(poseStack, 0, 0, barWidth, uvY + 5, percentHealth, doSegments, opacity);
+			if (!batched)
+				RenderSystem.enableBlend();
+
+			constructBarRender(poseStack, batched, barWidth, uvY + 5, percentHealth, doSegments, opacity);
 		}
 
 		if (renderType != TESHud.BarRenderType.BAR) {
-			String healthText = TESUtil.roundToDecimal(entityState.getHealth(), 1) + "/" + TESUtil.roundToDecimal(entity.getMaxHealth(), 1);
-			float halfTextWidth = mc.font.width(healthText) / 2f;
+			EntityHudLayout layout = entityState.getHudLayout(mc.font);
+			String healthText = layout.getHealthText();
+			float halfTextWidth = layout.getHealthTextWidth() / 2f;
 			float center = barWidth / 2f;
 
+			int backingColour = 0x090909 | (int)(opacity * 255 * TESConstants.CONFIG.hudBarFontBackingOpacity()) << 24;
+			int textColour = TESClientUtil.packColour((int)(opacity * 255f), 255, 255, 255);
+
 			poseStack.translate(0, 0, -0.001f);
-			TESClientUtil.drawColouredSquare(poseStack, (int)(center - halfTextWidth - 1), -2, (int)(halfTextWidth * 2) + 1, 9, 0x090909 | (int)(opacity * 255 * TESConstants.CONFIG.hudBarFontBackingOpacity()) << 24);
+
+			if (batched) {
+				InWorldHudBatch.fill(poseStack.last().pose(), (int)(center - halfTextWidth - 1), -2, (int)(halfTextWidth * 2) + 1, 9, backingColour);
+			}
+			else {
+				TESClientUtil.drawColouredSquare(poseStack, (int)(center - halfTextWidth - 1), -2, (int)(halfTextWidth * 2) + 1, 9, backingColour);
+			}
+
 			poseStack.translate(0, 0, -0.001f);
-			TESClientUtil.drawText(poseStack, healthText, center - halfTextWidth, -1, TESClientUtil.packColour((int)(opacity * 255f), 255, 255, 255));
+			drawText(poseStack, mc, batched, healthText, center - halfTextWidth, -1, textColour);
 		}
 
 		poseStack.popPose();
@@ -107,33 +134,35 @@ public final class BuiltinHudElements {
 				return 0;
 		}
 
-		int armour = TESUtil.getArmour(entity);
+		EntityHudLayout layout = getLayout(mc, entity);
 
-		if (armour <= 0)
+		if (layout.getArmour() <= 0)
 			return 0;
 
 		poseStack.pushPose();
-		float toughness = TESUtil.getArmourToughness(entity);
+		float toughness = layout.getToughness();
 		int textColour = TESClientUtil.packColour((int)(opacity * 255f), 255, 255, 255);
 
-		if (inWorldHud) {
-			int totalWidth = toughness > 0 ? 43 + mc.font.width("x" + TESUtil.roundToDecimal(toughness, 1)) : mc.font.width("x" + armour) + 10;
+		boolean batched = inWorldHud && InWorldHudBatch.isActive();
 
-			poseStack.translate(totalWidth * -0.5f, 0, 0);
+		if (inWorldHud)
+			poseStack.translate(layout.getInWorldArmourWidth() * -0.5f, 0, 0);
+
+		if (!batched) {
+			TESClientUtil.prepRenderForTexture(Screen.GUI_ICONS_LOCATION);
+			RenderSystem.enableBlend();
+			RenderSystem.color4f(1, 1, 1, opacity);
 		}
 
-		TESClientUtil.prepRenderForTexture(Screen.GUI_ICONS_LOCATION);
-		RenderSystem.enableBlend();
-		RenderSystem.color4f(1, 1, 1, opacity);
-		TESClientUtil.drawSimpleTexture(poseStack, 0, 0, 9, 9, 34, 9, 256);
+		drawTexture(poseStack, batched, Screen.GUI_ICONS_LOCATION, 0, 0, 9, 9, 34, 9, 256, opacity);
 
 		if (toughness > 0)
-			TESClientUtil.drawSimpleTexture(poseStack, 33, 0, 9, 9, 43, 18, 256);
+			drawTexture(poseStack, batched, Screen.GUI_ICONS_LOCATION, 33, 0, 9, 9, 43, 18, 256, opacity);
 
-		TESClientUtil.drawText(poseStack, "x" + armour, 9.5f, 1, textColour);
+		drawText(poseStack, mc, batched, layout.getArmourText(), 9.5f, 1, textColour);
 
 		if (toughness > 0)
-			TESClientUtil.drawText(poseStack, "x" + TESUtil.roundToDecimal(toughness, 1), 43, 1, textColour);
+			drawText(poseStack, mc, batched, layout.getToughnessText(), 43, 1, textColour);
 
 		poseStack.popPose();
 
@@ -150,34 +179,33 @@ public final class BuiltinHudElements {
 				return 0;
 		}
 
+		EntityHudLayout layout = getLayout(mc, entity);
+		boolean batched = inWorldHud && InWorldHudBatch.isActive();
 		int x = 0;
 
-		TESClientUtil.prepRenderForTexture(ICONS_TEXTURE);
+		if (!batched)
+			TESClientUtil.prepRenderForTexture(ICONS_TEXTURE);
 
-		if (TESUtil.isFireImmune(entity)) {
-			TESClientUtil.drawSimpleTexture(poseStack, x, 0, 8, 8, 0, 0, 32);
+		if (layout.isFireImmune()) {
+			drawTexture(poseStack, batched, ICONS_TEXTURE, x, 0, 8, 8, 0, 0, 32, opacity);
 
 			x += 9;
 		}
 
-		if (TESUtil.isMeleeMob(entity)) {
-			TESClientUtil.drawSimpleTexture(poseStack, x, 0, 8, 8, 8, 0, 32);
+		if (layout.isMeleeMob()) {
+			drawTexture(poseStack, batched, ICONS_TEXTURE, x, 0, 8, 8, 8, 0, 32, opacity);
 
 			x += 9;
 		}
 
-		if (TESUtil.isRangedMob(entity)) {
-			TESClientUtil.drawSimpleTexture(poseStack, x, 0, 8, 8, 16, 0, 32);
+		if (layout.isRangedMob()) {
+			drawTexture(poseStack, batched, ICONS_TEXTURE, x, 0, 8, 8, 16, 0, 32, opacity);
 
 			x += 9;
 		}
 
-		CreatureAttribute mobType = entity.getMobType();
-
-		if (mobType != CreatureAttribute.UNDEFINED) {
-			int mobTypeU = mobType == CreatureAttribute.WATER ? 24 : (mobType == CreatureAttribute.ILLAGER ? 16 : (mobType == CreatureAttribute.ARTHROPOD ? 8 : 0));
-
-			TESClientUtil.drawSimpleTexture(poseStack, x, 0, 8, 8, mobTypeU, 8, 32);
+		if (layout.getMobTypeU() >= 0) {
+			drawTexture(poseStack, batched, ICONS_TEXTURE, x, 0, 8, 8, layout.getMobTypeU(), 8, 32, opacity);
 
 			x += 9;
 		}
@@ -200,13 +228,12 @@ public final class BuiltinHudElements {
 		if (entityState == null || entityState.getEffects().isEmpty())
 			return 0;
 
-
+		EntityHudLayout.EffectGrid grid = entityState.getHudLayout(mc.font).getEffectGrid(inWorldHud);
+		boolean batched = inWorldHud && InWorldHudBatch.isActive();
 		int effectsSize = entityState.getEffects().size();
 		PotionSpriteUploader textureManager = mc.getMobEffectTextures();
-		int barLength = inWorldHud ? TESAPI.getConfig().inWorldBarsLength() : TESAPI.getConfig().hudHealthBarLength();
-		float maxX = barLength * 2f;
-		int iconsPerRow = (int)Math.floor(maxX / 18f);
-		int rows = (int)Math.ceil(effectsSize / (float)iconsPerRow);
+		int iconsPerRow = grid.getIconsPerRow();
+		int rows = grid.getRows();
 		int x = inWorldHud ? (Math.min(effectsSize, iconsPerRow) * -9) : 0;
 		int y = 0;
 		int i = 0;
@@ -215,25 +242,98 @@ public final class BuiltinHudElements {
 		poseStack.scale(0.5f, 0.5f, 1);
 
 		if (inWorldHud)
-			poseStack.translate(0, Math.floor(effectsSize * 18 / maxX) * -18, 0);
+			poseStack.translate(0, grid.getInWorldYOffset(), 0);
 
 		for (ResourceLocation effectId : entityState.getEffects()) {
 			TextureAtlasSprite sprite = textureManager.get(Registry.MOB_EFFECT.get(effectId));
 
-			TESClientUtil.prepRenderForTexture(sprite.atlas().location());
-			Screen.blit(poseStack, i * 18 + x, y, 0, 18, 18, sprite);
+			if (batched) {
+				InWorldHudBatch.blitSprite(poseStack.last().pose(), sprite, i * 18 + x, y, 18, 18, opacity);
+			}
+			else {
+				TESClientUtil.prepRenderForTexture(sprite.atlas().location());
+				Screen.blit(poseStack, i * 18 + x, y, 0, 18, 18, sprite);
+			}
 
 			if (++i >= iconsPerRow) {
 				i = 0;
 				y += 18;
 
 				if (inWorldHud && y / 18 == rows - 1)
-					x = (effectsSize % iconsPerRow) % iconsPerRow * -9;
+					x = grid.getLastRowInWorldX();
 			}
 		}
 
 		poseStack.popPose();
 
-		return (int)Math.ceil(effectsSize / (float)iconsPerRow) * 9;
+		return rows * 9;
+	}
+
+	/**
+	 * Draw a region of a square texture, either into the {@link InWorldHudBatch} or immediately.<br>
+	 * When drawing immediately, the texture and colour are expected to already be set
+	 */
+	private static void drawTexture(MatrixStack poseStack, boolean batched, ResourceLocation texture, int x, int y, int width, int height, float u, float v, int textureSize, float opacity) {
+		if (batched) {
+			InWorldHudBatch.blit(poseStack.last().pose(), texture, x, y, width, height, u, v, width, height, textureSize, textureSize, opacity);
+		}
+		else {
+			TESClientUtil.drawSimpleTexture(poseStack, x, y, width, height, u, v, textureSize);
+		}
+	}
+
+	/**
+	 * Draw some text, either into the {@link InWorldHudBatch} or immediately
+	 */
+	private static void drawText(MatrixStack poseStack, Minecraft mc, boolean batched, String text, float x, float y, int colour) {
+		if (batched) {
+			mc.font.drawInBatch(text, x, y, colour, false, poseStack.last().pose(), InWorldHudBatch.getTextBuffer(), false, 0, LightTexture.FULL_BRIGHT);
+		}
+		else {
+			TESClientUtil.drawText(poseStack, text, x, y, colour);
+		}
+	}
+
+	/**
+	 * Build a health bar, either into the {@link InWorldHudBatch} or immediately.<br>
+	 * Batched bars are built from the same pieces as {@link TESClientUtil#constructBarRender}
+	 */
+	private static void constructBarRender(MatrixStack poseStack, boolean batched, int width, int v, float percentComplete, boolean withBarOverlay, float opacity) {
+		if (!batched) {
+			TESClientUtil.constructBarRender(poseStack, 0, 0, width, v, percentComplete, withBarOverlay, opacity);
+
+			return;
+		}
+
+		Matrix4f pose = poseStack.last().pose();
+		int percentPixels = Math.round(percentComplete * width);
+		int midBarWidth = width - 10;
+
+		InWorldHudBatch.blit(pose, BARS_TEXTURE, 0, 0, Math.min(5, percentPixels), 5, 0, v, Math.min(5, percentPixels), 5, 256, 256, opacity);
+
+		if (percentPixels > 5) {
+			if (midBarWidth > 0)
+				InWorldHudBatch.blit(pose, BARS_TEXTURE, 5, 0, Math.min(midBarWidth, percentPixels - 5), 5, 5, v, Math.min(midBarWidth, percentPixels - 5), 5, 256, 256, opacity);
+
+			if (percentPixels > width - 5)
+				InWorldHudBatch.blit(pose, BARS_TEXTURE, 5 + midBarWidth, 0, Math.min(5, percentPixels - 5), 5, 177, v, Math.min(5, percentPixels - 5), 5, 256, 256, opacity);
+		}
+
+		if (withBarOverlay && width > 10)
+			InWorldHudBatch.blit(pose, BARS_TEXTURE, 0, 0, width, 5, 0, 80, 182, 5, 256, 256, 0.75f * opacity);
+	}
+
+	/**
+	 * Get the retained layout for the given entity, or a shared fallback layout rebuilt on the spot if the entity isn't being tracked
+	 */
+	private static EntityHudLayout getLayout(Minecraft mc, LivingEntity entity) {
+		EntityState entityState = TESEntityTracking.getStateForEntity(entity);
+
+		if (entityState != null)
+			return entityState.getHudLayout(mc.font);
+
+		FALLBACK_LAYOUT.invalidate();
+
+		return FALLBACK_LAYOUT.update(entity, entity.getHealth(), 0, 0, mc.font);
 	}
 }
@@ -0,0 +1,147 @@
+package net.tslat.tes.core.particle;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.gui.fonts.EmptyGlyph;
+import net.minecraft.client.gui.fonts.Font;
+import net.minecraft.client.gui.fonts.IGlyph;
+import net.minecraft.client.gui.fonts.TexturedGlyph;
+import net.minecraft.client.renderer.IRenderTypeBuffer;
+import net.minecraft.resources.IReloadableResourceManager;
+import net.minecraft.resources.IResourceManagerReloadListener;
+import net.minecraft.util.math.vector.Matrix4f;
+import net.minecraft.util.text.Style;
+import net.tslat.tes.mixin.client.FontAccessor;
+
+import javax.annotation.Nullable;
+
+/**
+ * Cache of pre-laid-out glyphs for the strings shown by numeric TES particles.<br>
+ * Numeric particles show a small set of frequently-repeated strings, so each string's glyphs and their offsets from the string's centre are looked up from the font once, then re-used each frame without any further font layout or width measurement.<br>
+ * The cache is bounded, dropping the least recently used string when full, and is {@link NumericGlyphCache#clear cleared} whenever resources are reloaded
+ */
+public final class NumericGlyphCache {
+	private static final int MAX_CACHED_STRINGS = 512;
+	private static final Object2ObjectLinkedOpenHashMap<String, GlyphLayout> LAYOUTS = new Object2ObjectLinkedOpenHashMap<>(MAX_CACHED_STRINGS);
+
+	@Nullable
+	private static Font CACHED_FONT = null;
+
+	/**
+	 * Write the given text into the given {@link IRenderTypeBuffer}, centred horizontally on x = 0
+	 * @param fontRenderer The font renderer to lay the text out with, if not already cached
+	 * @param text The text to render
+	 * @param y The y position to render at
+	 * @param pose The pose to render with
+	 * @param bufferSource The buffer to write the glyphs into
+	 * @param colour The ARGB colour of the text
+	 * @param packedLight The packed light value to render with
+	 */
+	public static void renderCentered(FontRenderer fontRenderer, String text, float y, Matrix4f pose, IRenderTypeBuffer bufferSource, int colour, int packedLight) {
+		GlyphLayout layout = getLayout(fontRenderer, text);
+
+		if ((colour & 0xFC000000) == 0)
+			colour |= 0xFF000000;
+
+		float red = (colour >> 16 & 255) / 255f;
+		float green = (colour >> 8 & 255) / 255f;
+		float blue = (colour & 255) / 255f;
+		float alpha = (colour >> 24 & 255) / 255f;
+
+		for (int i = 0; i < layout.glyphs.length; i++) {
+			TexturedGlyph glyph = layout.glyphs[i];
+
+			glyph.render(false, layout.xOffsets[i], y, pose, bufferSource.getBuffer(glyph.renderType(false)), red, green, blue, alpha, packedLight);
+		}
+	}
+
+	/**
+	 * Get the rendered width of the given text, from its cached layout
+	 */
+	public static float getWidth(FontRenderer fontRenderer, String text) {
+		return getLayout(fontRenderer, text).width;
+	}
+
+	/**
+	 * Register the resource reload listener that clears the cache, so that it isn't left holding glyphs from a previous font
+	 */
+	public static void registerReloadListener() {
+		((IReloadableResourceManager)Minecraft.getInstance().getResourceManager()).registerReloadListener((IResourceManagerReloadListener)manager -> clear());
+	}
+
+	/**
+	 * Drop all cached layouts, to be re-baked from the current font on next use
+	 */
+	public static void clear() {
+		LAYOUTS.clear();
+
+		CACHED_FONT = null;
+	}
+
+	private static GlyphLayout getLayout(FontRenderer fontRenderer, String text) {
+		Font font = ((FontAccessor)fontRenderer).invokeGetFontSet(Style.DEFAULT_FONT);
+
+		if (font != CACHED_FONT) {
+			clear();
+
+			CACHED_FONT = font;
+		}
+
+		GlyphLayout layout = LAYOUTS.getAndMoveToLast(text);
+
+		if (layout == null) {
+			layout = bakeLayout(font, text);
+
+			if (LAYOUTS.size() >= MAX_CACHED_STRINGS)
+				LAYOUTS.removeFirst();
+
+			LAYOUTS.putAndMoveToLast(text, layout);
+		}
+
+		return layout;
+	}
+
+	private static GlyphLayout bakeLayout(Font font, String text) {
+		ObjectArrayList<TexturedGlyph> glyphs = new ObjectArrayList<>(text.length());
+		FloatArrayList xOffsets = new FloatArrayList(text.length());
+		float x = 0;
+
+		for (int i = 0; i < text.length();) {
+			int codePoint = text.codePointAt(i);
+			IGlyph glyphInfo = font.getGlyphInfo(codePoint);
+			TexturedGlyph glyph = font.getGlyph(codePoint);
+
+			if (!(glyph instanceof EmptyGlyph)) {
+				glyphs.add(glyph);
+				xOffsets.add(x);
+			}
+
+			x += glyphInfo.getAdvance(false);
+			i += Character.charCount(codePoint);
+		}
+
+		float halfWidth = x / 2f;
+		float[] offsets = xOffsets.toFloatArray();
+
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] -= halfWidth;
+		}
+
+		return new GlyphLayout(glyphs.toArray(new TexturedGlyph[0]), offsets, x);
+	}
+
+	private static final class GlyphLayout {
+		private final TexturedGlyph[] glyphs;
+		private final float[] xOffsets;
+		private final float width;
+
+		private GlyphLayout(TexturedGlyph[] glyphs, float[] xOffsets, float width) {
+			this.glyphs = glyphs;
+			this.xOffsets = xOffsets;
+			this.width = width;
+		}
+	}
+}
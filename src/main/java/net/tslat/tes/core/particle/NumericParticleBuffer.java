@@ -0,0 +1,759 @@
+package net.tslat.tes.core.particle;
+
+import com.mojang.blaze3d.matrix.MatrixStack;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.renderer.ActiveRenderInfo;
+import net.minecraft.client.renderer.IRenderTypeBuffer;
+import net.minecraft.client.renderer.LightTexture;
+import net.minecraft.client.renderer.culling.ClippingHelper;
+import net.minecraft.util.Util;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.vector.Quaternion;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.util.math.vector.Vector3f;
+import net.tslat.tes.api.TESAPI;
+import net.tslat.tes.api.TESParticle;
+import net.tslat.tes.api.util.TESUtil;
+import net.tslat.tes.core.state.EntityState;
+import net.tslat.tes.mixin.client.FrustumAccessor;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Columnar store for TES' built-in numeric particles.<br>
+ * Rather than each particle being its own object, particle data is held in primitive per-particle columns, with expired particles removed by compacting the columns each tick.<br>
+ * Only used for TES' own numeric particles, all other particles are handled as regular {@link TESParticle TESParticles}.<br>
+ * {@link TESParticle.Animation#getBallisticGravity Ballistic} animations are not simulated at all. Their position is computed from their spawn position, initial velocity, and age when rendered.<br>
+ * Other animations are applied each tick through their in-place {@link TESParticle.Animation Animation} methods.<br>
+ * The buffer is bounded by a global and per-entity budget. When a budget is full, the lowest-priority particle is replaced by the new one, or the new one is dropped if it is the lowest priority itself.<br>
+ * The budgets are shared with TES' object particles, which {@link NumericParticleBuffer#reserveExternal reserve} their place in them without being stored in the buffer
+ */
+public final class NumericParticleBuffer {
+	private static final Quaternion TEXT_FLIP = Vector3f.ZP.rotationDegrees(180);
+	private static final double FULL_SORT_CAMERA_DISTANCE_SQR = 4 * 4;
+	private static final float MIN_LABEL_DEPTH = 0.05f;
+	private static final int MAX_LABEL_NUDGES = 4;
+	private static final int MAX_LABEL_CHECKS_PER_CELL = 8;
+	private static final int MAX_LABEL_CELL_SPAN = 2;
+
+	private final Int2IntOpenHashMap entityParticleCounts = new Int2IntOpenHashMap();
+	private final Long2IntOpenHashMap labelCells = Util.make(new Long2IntOpenHashMap(), map -> map.defaultReturnValue(-1));
+	private final IntArrayList oversizedLabels = new IntArrayList();
+	private final Quaternion renderRotation = new Quaternion(0, 0, 0, 1);
+	private final IntComparator furthestFirst = (index1, index2) -> Double.compare(this.renderDepth[index2], this.renderDepth[index1]);
+
+	private int size = 0;
+	private int evicted = 0;
+	private int externalCount = 0;
+	private long tickCount = 0;
+
+	private int maxParticles = Integer.MAX_VALUE;
+	private int maxParticlesPerEntity = Integer.MAX_VALUE;
+	private int priorityEntityId = -1;
+	private double cameraX = 0;
+	private double cameraY = 0;
+	private double cameraZ = 0;
+	private double renderDistanceSqr = Double.MAX_VALUE;
+
+	private int[] renderOrder;
+	private int renderOrderSize = 0;
+	private float[] renderPos = new float[0];
+	private double[] renderDepth = new double[0];
+	private int[] compactedIndices = new int[0];
+	private float[] labelScreenPos = new float[0];
+	private float[] labelHalfSize = new float[0];
+	private float[] labelDepth = new float[0];
+	private int[] nextInCell = new int[0];
+	private double lastSortCameraX = 0;
+	private double lastSortCameraY = 0;
+	private double lastSortCameraZ = 0;
+
+	float[] pos;
+	float[] prevPos;
+	float[] velocity;
+	float[] gravity;
+	long[] spawnTick;
+	int[] lifetime;
+	int[] colour;
+	int[] entityId;
+	float[] value;
+	String[] text;
+	TESParticle.Animation[] animation;
+
+	public NumericParticleBuffer(int initialCapacity) {
+		initialCapacity = Math.max(1, initialCapacity);
+
+		this.pos = new float[initialCapacity * 3];
+		this.prevPos = new float[initialCapacity * 3];
+		this.velocity = new float[initialCapacity * 3];
+		this.gravity = new float[initialCapacity];
+		this.spawnTick = new long[initialCapacity];
+		this.lifetime = new int[initialCapacity];
+		this.colour = new int[initialCapacity];
+		this.entityId = new int[initialCapacity];
+		this.value = new float[initialCapacity];
+		this.text = new String[initialCapacity];
+		this.animation = new TESParticle.Animation[initialCapacity];
+		this.renderOrder = new int[initialCapacity];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Get the number of particles counted against the budgets, including {@link NumericParticleBuffer#reserveExternal external} particles
+	 */
+	public int getBudgetedCount() {
+		return this.size - this.evicted + this.externalCount;
+	}
+
+	/**
+	 * Clear the buffer, including any {@link NumericParticleBuffer#reserveExternal external} reservations
+	 */
+	public void clear() {
+		Arrays.fill(this.text, 0, this.size, null);
+		Arrays.fill(this.animation, 0, this.size, null);
+		this.entityParticleCounts.clear();
+
+		this.size = 0;
+		this.evicted = 0;
+		this.externalCount = 0;
+		this.renderOrderSize = 0;
+	}
+
+	/**
+	 * Reserve a place in the budgets for a particle held outside of this buffer.<br>
+	 * Particles for the priority entity evict the lowest-priority numeric particle within the full budget to make room. All others are rejected if the budget is full
+	 * @param entityId The id of the entity the particle is for, or -1 if not for an entity
+	 * @return Whether the particle was given a place in the budgets
+	 */
+	public boolean reserveExternal(int entityId) {
+		boolean priority = entityId != -1 && entityId == this.priorityEntityId;
+
+		if (entityId != -1 && this.entityParticleCounts.get(entityId) >= this.maxParticlesPerEntity) {
+			if (!priority || !evictLowestPriority(entityId))
+				return false;
+		}
+		else if (getBudgetedCount() >= this.maxParticles) {
+			if (!priority || !evictLowestPriority(-1))
+				return false;
+		}
+
+		this.externalCount++;
+
+		if (entityId != -1)
+			this.entityParticleCounts.addTo(entityId, 1);
+
+		return true;
+	}
+
+	/**
+	 * Release a place previously {@link NumericParticleBuffer#reserveExternal reserved} for a particle held outside of this buffer
+	 */
+	public void releaseExternal(int entityId) {
+		this.externalCount--;
+
+		decrementEntityCount(entityId);
+	}
+
+	/**
+	 * Update the budgets and camera context used when deciding which particles to keep and animate
+	 * @param maxParticles The maximum number of particles the buffer may hold
+	 * @param maxParticlesPerEntity The maximum number of particles the buffer may hold for any one entity
+	 * @param priorityEntityId The id of the entity whose particles should always be kept, or -1 for none
+	 * @param renderDistance The maximum distance from the camera that particles are rendered at
+	 * @param cameraX The x position of the camera
+	 * @param cameraY The y position of the camera
+	 * @param cameraZ The z position of the camera
+	 */
+	public void updateBudgets(int maxParticles, int maxParticlesPerEntity, int priorityEntityId, double renderDistance, double cameraX, double cameraY, double cameraZ) {
+		this.maxParticles = maxParticles;
+		this.maxParticlesPerEntity = maxParticlesPerEntity;
+		this.priorityEntityId = priorityEntityId;
+		this.renderDistanceSqr = renderDistance * renderDistance;
+		this.cameraX = cameraX;
+		this.cameraY = cameraY;
+		this.cameraZ = cameraZ;
+	}
+
+	/**
+	 * Add a new numeric particle to the buffer
+	 * @param entityState The state of the entity the particle is for, or null if not for an entity
+	 * @param x The x position of the particle
+	 * @param y The y position of the particle
+	 * @param z The z position of the particle
+	 * @param animation The built-in animation for the particle
+	 * @param value The numeric value of the particle
+	 * @param colour The ARGB colour of the particle
+	 * @param lifespan How long (in ticks) the particle should last
+	 * @return The index of the new particle, or -1 if it was dropped for being lower priority than everything else within its budget
+	 */
+	public int add(@Nullable EntityState entityState, float x, float y, float z, TESParticle.Animation animation, double value, int colour, int lifespan) {
+		int entityId = entityState == null ? -1 : entityState.getEntity().getId();
+		int index = -1;
+
+		boolean budgetFull = false;
+
+		if (entityId != -1 && this.entityParticleCounts.get(entityId) >= this.maxParticlesPerEntity) {
+			index = findLowestPriority(entityId);
+			budgetFull = true;
+		}
+		else if (getBudgetedCount() >= this.maxParticles) {
+			index = findLowestPriority(-1);
+			budgetFull = true;
+		}
+
+		if (budgetFull) {
+			if (index == -1 || getPriority(index) > getPriority(entityId, x, y, z, (float)value, lifespan))
+				return -1;
+
+			decrementEntityCount(this.entityId[index]);
+		}
+		else {
+			if (this.size == this.lifetime.length)
+				grow(this.size * 2);
+
+			index = this.size++;
+		}
+
+		int posIndex = index * 3;
+
+		this.pos[posIndex] = x;
+		this.pos[posIndex + 1] = y;
+		this.pos[posIndex + 2] = z;
+
+		animation.setInitialVelocity(this.pos, this.velocity, posIndex, ThreadLocalRandom.current());
+		System.arraycopy(this.pos, posIndex, this.prevPos, posIndex, 3);
+
+		this.gravity[index] = animation.getBallisticGravity();
+		this.spawnTick[index] = this.tickCount;
+		this.lifetime[index] = lifespan;
+		this.colour[index] = colour;
+		this.entityId[index] = entityId;
+		this.value[index] = (float)value;
+		this.text[index] = TESUtil.roundToDecimal(value, TESAPI.getConfig().particleDecimalPoints());
+		this.animation[index] = animation;
+
+		if (entityId != -1)
+			this.entityParticleCounts.addTo(entityId, 1);
+
+		return index;
+	}
+
+	/**
+	 * Add a value onto an existing live particle for the same entity, rather than creating a new one.<br>
+	 * The particle is re-spawned at the given position with its lifetime refreshed, showing the combined value
+	 * @param entityState The state of the entity the particle is for
+	 * @param x The x position to re-spawn the particle at
+	 * @param y The y position to re-spawn the particle at
+	 * @param z The z position to re-spawn the particle at
+	 * @param animation The built-in animation for the particle. Only particles with the same animation and colour are merged with
+	 * @param value The numeric value to add to the particle
+	 * @param colour The ARGB colour of the particle
+	 * @param lifespan How long (in ticks) the particle should last
+	 * @param mergeWindow How many ticks since the particle was last (re-)spawned that it can still be merged into
+	 * @return Whether a particle was found and merged into
+	 */
+	public boolean merge(EntityState entityState, float x, float y, float z, TESParticle.Animation animation, double value, int colour, int lifespan, int mergeWindow) {
+		int entityId = entityState.getEntity().getId();
+
+		if (!this.entityParticleCounts.containsKey(entityId))
+			return false;
+
+		for (int i = this.size - 1; i >= 0; i--) {
+			if (this.entityId[i] != entityId || this.animation[i] != animation || this.colour[i] != colour || this.lifetime[i] < 0 || lifespan - this.lifetime[i] > mergeWindow)
+				continue;
+
+			int posIndex = i * 3;
+
+			this.pos[posIndex] = x;
+			this.pos[posIndex + 1] = y;
+			this.pos[posIndex + 2] = z;
+
+			animation.setInitialVelocity(this.pos, this.velocity, posIndex, ThreadLocalRandom.current());
+			System.arraycopy(this.pos, posIndex, this.prevPos, posIndex, 3);
+
+			this.spawnTick[i] = this.tickCount;
+			this.lifetime[i] = lifespan;
+			this.value[i] += (float)value;
+			this.text[i] = TESUtil.roundToDecimal(this.value[i], TESAPI.getConfig().particleDecimalPoints());
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Tick all particles in the buffer, then compact the columns to remove any that have expired.<br>
+	 * Ballistic particles and particles beyond the render distance only age, and are not animated
+	 */
+	public void tick() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		this.tickCount++;
+
+		for (int i = 0; i < this.size; i++) {
+			int posIndex = i * 3;
+
+			this.lifetime[i]--;
+
+			if (!Float.isNaN(this.gravity[i]))
+				continue;
+
+			System.arraycopy(this.pos, posIndex, this.prevPos, posIndex, 3);
+
+			if (distanceToCameraSqr(this.pos[posIndex], this.pos[posIndex + 1], this.pos[posIndex + 2]) <= this.renderDistanceSqr)
+				this.animation[i].perTickModifier(this.lifetime[i], this.pos, this.prevPos, this.velocity, posIndex, random);
+		}
+
+		compact();
+	}
+
+	/**
+	 * Write all visible particles in the buffer into the given {@link IRenderTypeBuffer}, using the {@link NumericGlyphCache} for their text.<br>
+	 * Particles are written furthest-first so that overlapping translucent text blends correctly.<br>
+	 * Particles beyond the render distance or outside the given {@link ClippingHelper frustum} are skipped.<br>
+	 * Nothing is drawn until the caller ends the batch
+	 * @return The number of particles written
+	 */
+	public int render(MatrixStack poseStack, Minecraft mc, FontRenderer fontRenderer, IRenderTypeBuffer bufferSource, ClippingHelper frustum, float partialTick) {
+		float scale = 0.035f * TESAPI.getConfig().getParticleScale();
+		float cullRadius = 0.5f * TESAPI.getConfig().getParticleScale();
+		ActiveRenderInfo camera = mc.gameRenderer.getMainCamera();
+		Vector3d cameraPos = camera.getPosition();
+		Quaternion cameraRotation = camera.rotation();
+		int rendered = 0;
+
+		this.renderRotation.set(cameraRotation.i(), cameraRotation.j(), cameraRotation.k(), cameraRotation.r());
+		this.renderRotation.mul(TEXT_FLIP);
+		computeRenderPositions(cameraPos, partialTick);
+		updateRenderOrder(cameraPos);
+
+		if (TESAPI.getConfig().particleOverlapAvoidance())
+			separateOverlappingLabels(camera, fontRenderer, scale);
+
+		for (int i = 0; i < this.renderOrderSize; i++) {
+			int index = this.renderOrder[i];
+			int posIndex = index * 3;
+
+			if (this.renderDepth[index] > this.renderDistanceSqr || this.lifetime[index] < 0)
+				continue;
+
+			float x = this.renderPos[posIndex];
+			float y = this.renderPos[posIndex + 1];
+			float z = this.renderPos[posIndex + 2];
+
+			if (!((FrustumAccessor)frustum).invokeCubeInFrustum(x - cullRadius, y - cullRadius, z - cullRadius, x + cullRadius, y + cullRadius, z + cullRadius))
+				continue;
+
+			poseStack.pushPose();
+			poseStack.translate(x - cameraPos.x, y - cameraPos.y, z - cameraPos.z);
+			poseStack.mulPose(this.renderRotation);
+			poseStack.scale(scale, scale, scale);
+
+			NumericGlyphCache.renderCentered(fontRenderer, this.text[index], 4, poseStack.last().pose(), bufferSource, this.colour[index], LightTexture.FULL_BRIGHT);
+			poseStack.popPose();
+
+			rendered++;
+		}
+
+		return rendered;
+	}
+
+	/**
+	 * Compute the interpolated world position and squared camera distance of every particle for this frame.<br>
+	 * Ballistic particles stay at their spawn position until their first tick, matching a per-tick particle whose previous and current positions are both the spawn position until then
+	 */
+	private void computeRenderPositions(Vector3d cameraPos, float partialTick) {
+		if (this.renderDepth.length < this.size) {
+			this.renderPos = new float[this.lifetime.length * 3];
+			this.renderDepth = new double[this.lifetime.length];
+		}
+
+		for (int i = 0; i < this.size; i++) {
+			int posIndex = i * 3;
+			float x;
+			float y;
+			float z;
+
+			if (Float.isNaN(this.gravity[i])) {
+				x = MathHelper.lerp(partialTick, this.prevPos[posIndex], this.pos[posIndex]);
+				y = MathHelper.lerp(partialTick, this.prevPos[posIndex + 1], this.pos[posIndex + 1]);
+				z = MathHelper.lerp(partialTick, this.prevPos[posIndex + 2], this.pos[posIndex + 2]);
+			}
+			else {
+				float age = Math.max(0, this.tickCount - this.spawnTick[i] - 1 + partialTick);
+
+				x = this.pos[posIndex] + this.velocity[posIndex] * age;
+				y = this.pos[posIndex + 1] + this.velocity[posIndex + 1] * age - this.gravity[i] * age * (age + 1) / 2f;
+				z = this.pos[posIndex + 2] + this.velocity[posIndex + 2] * age;
+			}
+
+			double xOffset = x - cameraPos.x;
+			double yOffset = y - cameraPos.y;
+			double zOffset = z - cameraPos.z;
+
+			this.renderPos[posIndex] = x;
+			this.renderPos[posIndex + 1] = y;
+			this.renderPos[posIndex + 2] = z;
+			this.renderDepth[i] = xOffset * xOffset + yOffset * yOffset + zOffset * zOffset;
+		}
+	}
+
+	/**
+	 * Bring the furthest-first render order up to date.<br>
+	 * The previous frame's order is kept and nearly sorted already, so particles added since then are appended and the order is repaired with an insertion sort.<br>
+	 * If the camera has moved far enough that the previous order is no longer a good starting point, the order is fully re-sorted instead.<br>
+	 * The repair stays cheaper than a full sort up to a camera movement of around 4 blocks between frames, even at several thousand particles
+	 */
+	private void updateRenderOrder(Vector3d cameraPos) {
+		for (int i = this.renderOrderSize; i < this.size; i++) {
+			this.renderOrder[i] = i;
+		}
+
+		this.renderOrderSize = this.size;
+
+		double xMoved = cameraPos.x - this.lastSortCameraX;
+		double yMoved = cameraPos.y - this.lastSortCameraY;
+		double zMoved = cameraPos.z - this.lastSortCameraZ;
+
+		this.lastSortCameraX = cameraPos.x;
+		this.lastSortCameraY = cameraPos.y;
+		this.lastSortCameraZ = cameraPos.z;
+
+		if (xMoved * xMoved + yMoved * yMoved + zMoved * zMoved > FULL_SORT_CAMERA_DISTANCE_SQR) {
+			IntArrays.quickSort(this.renderOrder, 0, this.renderOrderSize, this.furthestFirst);
+
+			return;
+		}
+
+		for (int i = 1; i < this.renderOrderSize; i++) {
+			int index = this.renderOrder[i];
+			double depth = this.renderDepth[index];
+			int j = i - 1;
+
+			while (j >= 0 && this.renderDepth[this.renderOrder[j]] < depth) {
+				this.renderOrder[j + 1] = this.renderOrder[j];
+				j--;
+			}
+
+			this.renderOrder[j + 1] = index;
+		}
+	}
+
+	/**
+	 * Nudge particle labels upwards on-screen so that they don't overlap each other.<br>
+	 * Each label is projected onto the screen plane and placed into a spatial hash grid, nearest labels first, with each label moved up past any already-placed label it overlaps.<br>
+	 * The grid's cell size is twice the average label size, so that a few near (and therefore large) labels don't make the grid too coarse to be useful.<br>
+	 * Labels larger than a cell are kept in a separate list that every label checks against, instead of being placed in the grid.<br>
+	 * Overlap checks only look at the grid cells a label could overlap and are capped per cell, keeping the pass linear in the number of particles
+	 */
+	private void separateOverlappingLabels(ActiveRenderInfo camera, FontRenderer fontRenderer, float scale) {
+		if (this.labelScreenPos.length < this.size * 2) {
+			this.labelScreenPos = new float[this.lifetime.length * 2];
+			this.labelHalfSize = new float[this.lifetime.length * 2];
+			this.labelDepth = new float[this.lifetime.length];
+			this.nextInCell = new int[this.lifetime.length];
+		}
+
+		Vector3f look = camera.getLookVector();
+		Vector3f up = camera.getUpVector();
+		Vector3f left = camera.getLeftVector();
+		Vector3d cameraPos = camera.getPosition();
+		float halfHeight = fontRenderer.lineHeight * 0.5f * scale;
+		float totalLabelSize = 0;
+		int labelCount = 0;
+
+		for (int i = 0; i < this.size; i++) {
+			int posIndex = i * 3;
+			float xOffset = (float)(this.renderPos[posIndex] - cameraPos.x);
+			float yOffset = (float)(this.renderPos[posIndex + 1] - cameraPos.y);
+			float zOffset = (float)(this.renderPos[posIndex + 2] - cameraPos.z);
+			float depth = xOffset * look.x() + yOffset * look.y() + zOffset * look.z();
+
+			this.labelDepth[i] = depth;
+
+			if (depth < MIN_LABEL_DEPTH)
+				continue;
+
+			float halfWidth = NumericGlyphCache.getWidth(fontRenderer, this.text[i]) * 0.5f * scale;
+
+			this.labelScreenPos[i * 2] = (xOffset * left.x() + yOffset * left.y() + zOffset * left.z()) / depth;
+			this.labelScreenPos[i * 2 + 1] = (xOffset * up.x() + yOffset * up.y() + zOffset * up.z()) / depth;
+			this.labelHalfSize[i * 2] = halfWidth / depth;
+			this.labelHalfSize[i * 2 + 1] = halfHeight / depth;
+			totalLabelSize += Math.max(halfWidth, halfHeight) * 2 / depth;
+			labelCount++;
+		}
+
+		if (labelCount == 0)
+			return;
+
+		float cellSize = totalLabelSize / labelCount * 2;
+
+		this.labelCells.clear();
+		this.oversizedLabels.clear();
+
+		for (int i = this.renderOrderSize - 1; i >= 0; i--) {
+			int index = this.renderOrder[i];
+			float depth = this.labelDepth[index];
+
+			if (depth < MIN_LABEL_DEPTH || this.renderDepth[index] > this.renderDistanceSqr)
+				continue;
+
+			float originalY = this.labelScreenPos[index * 2 + 1];
+
+			for (int attempt = 0; attempt < MAX_LABEL_NUDGES; attempt++) {
+				float nudge = findLabelOverlap(index, cellSize);
+
+				if (nudge <= 0)
+					break;
+
+				this.labelScreenPos[index * 2 + 1] += nudge;
+			}
+
+			if (Math.max(this.labelHalfSize[index * 2], this.labelHalfSize[index * 2 + 1]) * 2 > cellSize) {
+				this.oversizedLabels.add(index);
+			}
+			else {
+				this.nextInCell[index] = this.labelCells.put(getLabelCell(this.labelScreenPos[index * 2], this.labelScreenPos[index * 2 + 1], cellSize), index);
+			}
+
+			float worldNudge = (this.labelScreenPos[index * 2 + 1] - originalY) * depth;
+
+			if (worldNudge != 0) {
+				int posIndex = index * 3;
+
+				this.renderPos[posIndex] += up.x() * worldNudge;
+				this.renderPos[posIndex + 1] += up.y() * worldNudge;
+				this.renderPos[posIndex + 2] += up.z() * worldNudge;
+			}
+		}
+	}
+
+	/**
+	 * Find how far the given label needs to move up to clear the first already-placed label that it overlaps.<br>
+	 * Grid labels are never larger than a cell, so only the cells within half a cell of the label's bounds need to be checked, up to {@link NumericParticleBuffer#MAX_LABEL_CELL_SPAN} cells either side of its centre
+	 * @return The distance to move, or 0 if it does not overlap anything
+	 */
+	private float findLabelOverlap(int index, float cellSize) {
+		float x = this.labelScreenPos[index * 2];
+		float y = this.labelScreenPos[index * 2 + 1];
+		float reachX = this.labelHalfSize[index * 2] + cellSize * 0.5f;
+		float reachY = this.labelHalfSize[index * 2 + 1] + cellSize * 0.5f;
+		int centreCellX = MathHelper.floor(x / cellSize);
+		int centreCellY = MathHelper.floor(y / cellSize);
+		int minCellX = Math.max(MathHelper.floor((x - reachX) / cellSize), centreCellX - MAX_LABEL_CELL_SPAN);
+		int maxCellX = Math.min(MathHelper.floor((x + reachX) / cellSize), centreCellX + MAX_LABEL_CELL_SPAN);
+		int minCellY = Math.max(MathHelper.floor((y - reachY) / cellSize), centreCellY - MAX_LABEL_CELL_SPAN);
+		int maxCellY = Math.min(MathHelper.floor((y + reachY) / cellSize), centreCellY + MAX_LABEL_CELL_SPAN);
+
+		for (int i = 0; i < this.oversizedLabels.size() && i < MAX_LABEL_CHECKS_PER_CELL; i++) {
+			float nudge = getLabelNudge(index, this.oversizedLabels.getInt(i));
+
+			if (nudge > 0)
+				return nudge;
+		}
+
+		for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+			for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+				int checked = 0;
+
+				for (int other = this.labelCells.get(getLabelCell(cellX, cellY)); other != -1 && checked < MAX_LABEL_CHECKS_PER_CELL; other = this.nextInCell[other]) {
+					float nudge = getLabelNudge(index, other);
+
+					checked++;
+
+					if (nudge > 0)
+						return nudge;
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Get how far the given label needs to move up to clear another label
+	 * @return The distance to move, or 0 if the labels don't overlap
+	 */
+	private float getLabelNudge(int index, int other) {
+		float y = this.labelScreenPos[index * 2 + 1];
+		float halfHeight = this.labelHalfSize[index * 2 + 1];
+		float otherY = this.labelScreenPos[other * 2 + 1];
+		float otherHalfHeight = this.labelHalfSize[other * 2 + 1];
+
+		if (Math.abs(this.labelScreenPos[index * 2] - this.labelScreenPos[other * 2]) >= this.labelHalfSize[index * 2] + this.labelHalfSize[other * 2] || Math.abs(y - otherY) >= halfHeight + otherHalfHeight)
+			return 0;
+
+		return otherY + otherHalfHeight + halfHeight - y;
+	}
+
+	private static long getLabelCell(float x, float y, float cellSize) {
+		return getLabelCell(MathHelper.floor(x / cellSize), MathHelper.floor(y / cellSize));
+	}
+
+	private static long getLabelCell(int cellX, int cellY) {
+		return (long)cellX << 32 | cellY & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Shift all live particles down over any expired ones, keeping their relative order.<br>
+	 * The render order is remapped to the particles' new positions
+	 */
+	private void compact() {
+		if (this.compactedIndices.length < this.size)
+			this.compactedIndices = new int[this.lifetime.length];
+
+		int liveCount = 0;
+
+		for (int i = 0; i < this.size; i++) {
+			if (this.lifetime[i] < 0) {
+				decrementEntityCount(this.entityId[i]);
+
+				this.compactedIndices[i] = -1;
+
+				continue;
+			}
+
+			if (i != liveCount)
+				move(i, liveCount);
+
+			this.compactedIndices[i] = liveCount++;
+		}
+
+		Arrays.fill(this.text, liveCount, this.size, null);
+		Arrays.fill(this.animation, liveCount, this.size, null);
+
+		int orderSize = 0;
+
+		for (int i = 0; i < this.renderOrderSize; i++) {
+			int index = this.compactedIndices[this.renderOrder[i]];
+
+			if (index != -1)
+				this.renderOrder[orderSize++] = index;
+		}
+
+		this.renderOrderSize = orderSize;
+		this.size = liveCount;
+		this.evicted = 0;
+	}
+
+	/**
+	 * Evict the lowest-priority particle from the buffer, to make room for an external particle.<br>
+	 * The particle stops counting against the budgets and rendering immediately, and is removed from the columns on the next {@link NumericParticleBuffer#compact compaction}
+	 * @param entityId The entity id to limit the search to, or -1 to search all particles
+	 * @return Whether a particle was found to evict
+	 */
+	private boolean evictLowestPriority(int entityId) {
+		int index = findLowestPriority(entityId);
+
+		if (index == -1)
+			return false;
+
+		decrementEntityCount(this.entityId[index]);
+
+		this.lifetime[index] = -1;
+		this.entityId[index] = -1;
+		this.evicted++;
+
+		return true;
+	}
+
+	/**
+	 * Find the lowest-priority particle in the buffer
+	 * @param entityId The entity id to limit the search to, or -1 to search all particles
+	 * @return The index of the particle, or -1 if none match
+	 */
+	private int findLowestPriority(int entityId) {
+		int lowestIndex = -1;
+		float lowestPriority = Float.MAX_VALUE;
+
+		for (int i = 0; i < this.size; i++) {
+			if (this.lifetime[i] < 0 || (entityId != -1 && this.entityId[i] != entityId))
+				continue;
+
+			float priority = getPriority(i);
+
+			if (lowestIndex == -1 || priority < lowestPriority) {
+				lowestIndex = i;
+				lowestPriority = priority;
+			}
+		}
+
+		return lowestIndex;
+	}
+
+	private float getPriority(int index) {
+		int posIndex = index * 3;
+
+		return getPriority(this.entityId[index], this.pos[posIndex], this.pos[posIndex + 1], this.pos[posIndex + 2], this.value[index], this.lifetime[index]);
+	}
+
+	/**
+	 * Compute the keep-priority of a particle.<br>
+	 * Particles for the priority entity always rank highest, then particles rank higher the larger their value, the longer they have left to live, and the closer they are
+	 */
+	private float getPriority(int entityId, float x, float y, float z, float value, int lifetime) {
+		if (entityId != -1 && entityId == this.priorityEntityId)
+			return Float.MAX_VALUE;
+
+		return (float)((1 + Math.abs(value)) * (1 + Math.max(0, lifetime)) / (1 + distanceToCameraSqr(x, y, z) * 0.01d));
+	}
+
+	private double distanceToCameraSqr(float x, float y, float z) {
+		double xDist = x - this.cameraX;
+		double yDist = y - this.cameraY;
+		double zDist = z - this.cameraZ;
+
+		return xDist * xDist + yDist * yDist + zDist * zDist;
+	}
+
+	private void decrementEntityCount(int entityId) {
+		if (entityId == -1)
+			return;
+
+		if (this.entityParticleCounts.addTo(entityId, -1) <= 1)
+			this.entityParticleCounts.remove(entityId);
+	}
+
+	private void move(int from, int to) {
+		System.arraycopy(this.pos, from * 3, this.pos, to * 3, 3);
+		System.arraycopy(this.prevPos, from * 3, this.prevPos, to * 3, 3);
+		System.arraycopy(this.velocity, from * 3, this.velocity, to * 3, 3);
+
+		this.gravity[to] = this.gravity[from];
+		this.spawnTick[to] = this.spawnTick[from];
+		this.lifetime[to] = this.lifetime[from];
+		this.colour[to] = this.colour[from];
+		this.entityId[to] = this.entityId[from];
+		this.value[to] = this.value[from];
+		this.text[to] = this.text[from];
+		this.animation[to] = this.animation[from];
+	}
+
+	private void grow(int capacity) {
+		this.pos = Arrays.copyOf(this.pos, capacity * 3);
+		this.prevPos = Arrays.copyOf(this.prevPos, capacity * 3);
+		this.velocity = Arrays.copyOf(this.velocity, capacity * 3);
+		this.gravity = Arrays.copyOf(this.gravity, capacity);
+		this.spawnTick = Arrays.copyOf(this.spawnTick, capacity);
+		this.lifetime = Arrays.copyOf(this.lifetime, capacity);
+		this.colour = Arrays.copyOf(this.colour, capacity);
+		this.entityId = Arrays.copyOf(this.entityId, capacity);
+		this.value = Arrays.copyOf(this.value, capacity);
+		this.text = Arrays.copyOf(this.text, capacity);
+		this.animation = Arrays.copyOf(this.animation, capacity);
+		this.renderOrder = Arrays.copyOf(this.renderOrder, capacity);
+	}
+}
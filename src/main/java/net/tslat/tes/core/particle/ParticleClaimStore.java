@@ -0,0 +1,152 @@
+package net.tslat.tes.core.particle;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.ResourceLocation;
+import net.tslat.tes.api.TESParticle;
+import net.tslat.tes.core.state.EntityState;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Storage for {@link TESParticleClaimant} registrations and the particle claims submitted against them.<br>
+ * Claimants are resolved to dense int ids once, at registration or first use.<br>
+ * Claims are double-buffered: claims submitted during a tick are collected into the pending buffer, then {@link ParticleClaimStore#swap swapped} in to become the active claims for the next tick.<br>
+ * Each buffer keeps its claim records in primitive columns that are re-used from tick to tick, chained per entity and indexed by entity id
+ */
+public final class ParticleClaimStore {
+	private final Object2IntOpenHashMap<ResourceLocation> claimantIds = new Object2IntOpenHashMap<>();
+	private final ObjectArrayList<TESParticleClaimant> claimants = new ObjectArrayList<>();
+
+	private ClaimBuffer activeClaims = new ClaimBuffer();
+	private ClaimBuffer pendingClaims = new ClaimBuffer();
+
+	public ParticleClaimStore() {
+		this.claimantIds.defaultReturnValue(-1);
+	}
+
+	public synchronized void registerClaimant(ResourceLocation id, TESParticleClaimant claimant) {
+		this.claimants.set(getOrCreateClaimantId(id), claimant);
+	}
+
+	/**
+	 * Add a claim to the pending buffer, to become active on the next {@link ParticleClaimStore#swap swap}
+	 */
+	public synchronized void addClaim(int entityId, ResourceLocation claimantId, @Nullable CompoundNBT data) {
+		this.pendingClaims.add(entityId, getOrCreateClaimantId(claimantId), data);
+	}
+
+	/**
+	 * Drop the active claims, then make the pending claims active
+	 */
+	public synchronized void swap() {
+		ClaimBuffer previous = this.activeClaims;
+
+		previous.clear();
+
+		this.activeClaims = this.pendingClaims;
+		this.pendingClaims = previous;
+	}
+
+	/**
+	 * Drop the active claims, leaving any pending claims in place
+	 */
+	public void clearActive() {
+		this.activeClaims.clear();
+	}
+
+	/**
+	 * Pass the given health change through each active claim for the entity in submission order, until either the claims run out or the health change is fully claimed
+	 * @return The remaining unclaimed health change
+	 */
+	public float handleClaims(EntityState entityState, float healthDelta, Consumer<TESParticle<?>> particleAdder) {
+		ClaimBuffer claims = this.activeClaims;
+
+		for (int record = claims.getFirstClaim(entityState.getEntity().getId()); record != -1; record = claims.nextClaim[record]) {
+			TESParticleClaimant claimant = this.claimants.get(claims.claimant[record]);
+
+			if (claimant == null)
+				continue;
+
+			healthDelta = claimant.checkClaim(entityState, healthDelta, claims.data[record], particleAdder);
+
+			if (healthDelta == 0)
+				break;
+		}
+
+		return healthDelta;
+	}
+
+	private int getOrCreateClaimantId(ResourceLocation id) {
+		int claimantId = this.claimantIds.getInt(id);
+
+		if (claimantId == -1) {
+			claimantId = this.claimants.size();
+
+			this.claimantIds.put(id, claimantId);
+			this.claimants.add(null);
+		}
+
+		return claimantId;
+	}
+
+	/**
+	 * One tick's worth of claims.<br>
+	 * Records are stored in parallel columns and linked into per-entity chains, with the entity id index pointing at the first and last record of each chain
+	 */
+	private static final class ClaimBuffer {
+		private final Int2IntOpenHashMap firstClaims = new Int2IntOpenHashMap();
+		private final Int2IntOpenHashMap lastClaims = new Int2IntOpenHashMap();
+
+		private int size = 0;
+		private int[] claimant = new int[16];
+		private int[] nextClaim = new int[16];
+		private CompoundNBT[] data = new CompoundNBT[16];
+
+		private ClaimBuffer() {
+			this.firstClaims.defaultReturnValue(-1);
+			this.lastClaims.defaultReturnValue(-1);
+		}
+
+		private int getFirstClaim(int entityId) {
+			return this.size == 0 ? -1 : this.firstClaims.get(entityId);
+		}
+
+		private void add(int entityId, int claimantId, @Nullable CompoundNBT claimData) {
+			if (this.size == this.claimant.length) {
+				this.claimant = Arrays.copyOf(this.claimant, this.size * 2);
+				this.nextClaim = Arrays.copyOf(this.nextClaim, this.size * 2);
+				this.data = Arrays.copyOf(this.data, this.size * 2);
+			}
+
+			int record = this.size++;
+			int previous = this.lastClaims.put(entityId, record);
+
+			this.claimant[record] = claimantId;
+			this.nextClaim[record] = -1;
+			this.data[record] = claimData;
+
+			if (previous == -1) {
+				this.firstClaims.put(entityId, record);
+			}
+			else {
+				this.nextClaim[previous] = record;
+			}
+		}
+
+		private void clear() {
+			if (this.size == 0)
+				return;
+
+			Arrays.fill(this.data, 0, this.size, null);
+			this.firstClaims.clear();
+			this.lastClaims.clear();
+
+			this.size = 0;
+		}
+	}
+}
@@ -1,51 +1,103 @@
 package net.tslat.tes.core.particle;
 
 import com.mojang.blaze3d.matrix.MatrixStack;
-import com.mojang.datafixers.util.Pair;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.IRenderTypeBuffer;
+import net.minecraft.client.renderer.culling.ClippingHelper;
+import net.minecraft.entity.LivingEntity;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.util.math.vector.Vector3f;
 import net.tslat.tes.api.TESAPI;
 import net.tslat.tes.api.TESParticle;
+import net.tslat.tes.config.TESConfig;
+import net.tslat.tes.core.hud.TESHud;
+import net.tslat.tes.core.particle.type.GenericTESParticle;
+import net.tslat.tes.core.particle.type.NumericParticle;
 import net.tslat.tes.core.state.EntityState;
 
 import javax.annotation.Nullable;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
- * Lightweight 'particle' manager for TES particles
+ * Lightweight 'particle' manager for TES particles.<br>
+ * TES' own numeric particles are held in a {@link NumericParticleBuffer}, all other particles are handled as individual {@link TESParticle} instances.<br>
+ * {@link TESParticle TESParticles} can be added from any thread, and are collected in a lock-free inbox that is drained into a plain list on the client thread before each tick and render
  */
 public final class TESParticleManager {
-	private static final ConcurrentLinkedQueue<TESParticle<?>> PARTICLES = new ConcurrentLinkedQueue<>();
-	private static final Object2ObjectOpenHashMap<ResourceLocation, TESParticleClaimant> CLAIMANTS = new Object2ObjectOpenHashMap<>();
-	private static final ConcurrentMap<Integer, List<Pair<ResourceLocation, CompoundNBT>>> CLAIMS = new ConcurrentHashMap<>();
-	private static final ObjectArrayList<Runnable> NEW_CLAIMS = new ObjectArrayList<>();
+	private static final ConcurrentLinkedQueue<TESParticle<?>> PARTICLE_INBOX = new ConcurrentLinkedQueue<>();
+	private static final ObjectArrayList<TESParticle<?>> PARTICLES = new ObjectArrayList<>();
+	private static final NumericParticleBuffer NUMERIC_PARTICLES = new NumericParticleBuffer(64);
+	private static final AtomicInteger PARTICLE_COUNT = new AtomicInteger();
+
+	private static int LAST_FRAME_DRAW_CALLS = 0;
+	private static int LAST_FRAME_RENDERED = 0;
+	private static int LAST_FRAME_CULLED = 0;
+	private static final ParticleClaimStore CLAIMS = new ParticleClaimStore();
 
 	/**
-	 * Add a {@link TESParticle} to the particle manager, for rendering and handling
+	 * Add a {@link TESParticle} to the particle manager, for rendering and handling.<br>
+	 * Object particles share the {@link TESConfig#getMaxParticles global} and {@link TESConfig#getMaxParticlesPerEntity per-entity} budgets with numeric particles, and are admitted against them once collected on the client thread.<br>
+	 * Particles for the HUD's target entity make room by replacing the lowest-priority numeric particle, all others are dropped if their budget is full
 	 */
 	public static void addParticle(TESParticle<?> particle) {
 		if (!TESAPI.getConfig().particlesEnabled())
 			return;
 
-		PARTICLES.add(particle);
+		int entityId = getEntityId(particle);
+		LivingEntity target = TESHud.getTargetEntity();
+
+		if (PARTICLE_COUNT.incrementAndGet() > TESAPI.getConfig().getMaxParticles() && (entityId == -1 || target == null || target.getId() != entityId)) {
+			PARTICLE_COUNT.decrementAndGet();
+
+			return;
+		}
+
+		PARTICLE_INBOX.offer(particle);
+	}
+
+	/**
+	 * Add a built-in numeric particle to the particle manager, for rendering and handling.<br>
+	 * Falls back to a regular {@link NumericParticle} if called off the client thread, or if the animation has no {@link TESParticle.Animation#hasInPlaceForm in-place form}.<br>
+	 * If the particle budgets are full, the lowest-priority numeric particle is replaced, or this one is dropped if it is the lowest priority itself.<br>
+	 * If {@link TESConfig#getParticleMergeWindow particle merging} is enabled, the value may instead be added onto a recent particle for the same entity
+	 * @param entityState The state of the entity the particle is for, or null if not for an entity
+	 * @param x The x position of the particle
+	 * @param y The y position of the particle
+	 * @param z The z position of the particle
+	 * @param animation The built-in animation for the particle
+	 * @param value The numeric value of the particle
+	 * @param colour The ARGB colour of the particle
+	 */
+	public static void addNumericParticle(@Nullable EntityState entityState, float x, float y, float z, TESParticle.Animation animation, double value, int colour) {
+		if (!TESAPI.getConfig().particlesEnabled())
+			return;
+
+		if (!Minecraft.getInstance().isSameThread() || !animation.hasInPlaceForm()) {
+			addParticle(new NumericParticle(entityState, new Vector3f(x, y, z), animation, value).withColour(colour));
+
+			return;
+		}
+
+		int mergeWindow = TESAPI.getConfig().getParticleMergeWindow();
+
+		if (entityState != null && mergeWindow > 0 && NUMERIC_PARTICLES.merge(entityState, x, y, z, animation, value, colour, GenericTESParticle.DEFAULT_LIFESPAN, mergeWindow))
+			return;
+
+		NUMERIC_PARTICLES.add(entityState, x, y, z, animation, value, colour, GenericTESParticle.DEFAULT_LIFESPAN);
 	}
 
 	/**
 	 * Register a {@link TESParticleClaimant} with TES for receiving custom particle claims
 	 */
 	public static void registerParticleClaimant(ResourceLocation id, TESParticleClaimant claimant) {
-		synchronized (CLAIMANTS) {
-			CLAIMANTS.put(id, claimant);
-		}
+		CLAIMS.registerClaimant(id, claimant);
 	}
 
 	/**
@@ -59,48 +111,164 @@ public final class TESParticleManager {
 		if (!TESAPI.getConfig().particlesEnabled())
 			return;
 
-		synchronized (NEW_CLAIMS) {
-			NEW_CLAIMS.add(() -> CLAIMS.computeIfAbsent(entityId, key -> new ObjectArrayList<>()).add(Pair.of(claimantId, data)));
-		}
+		CLAIMS.addClaim(entityId, claimantId, data);
 	}
 
 	public static float handleParticleClaims(EntityState entityState, float healthDelta, Consumer<TESParticle<?>> particleAdder) {
-		for (Pair<ResourceLocation, CompoundNBT> pair : CLAIMS.getOrDefault(entityState.getEntity().getId(), Collections.emptyList())) {
-			healthDelta = CLAIMANTS.getOrDefault(pair.getFirst(), (state, delta, data, adder) -> delta).checkClaim(entityState, healthDelta, pair.getSecond(), particleAdder);
-
-			if (healthDelta == 0)
-				break;
-		}
-
-		return healthDelta;
+		return CLAIMS.handleClaims(entityState, healthDelta, particleAdder);
 	}
 
 	public static void tick() {
 		Minecraft mc = Minecraft.getInstance();
 
 		if (!TESAPI.getConfig().particlesEnabled()) {
+			PARTICLE_INBOX.clear();
 			PARTICLES.clear();
-			CLAIMS.clear();
+			PARTICLE_COUNT.set(0);
+			NUMERIC_PARTICLES.clear();
+			CLAIMS.clearActive();
 
 			return;
 		}
 
+		updateBudgets(mc);
+		drainInbox();
+
 		if (!mc.isPaused()) {
-			PARTICLES.forEach(particle -> particle.tick(mc));
-			PARTICLES.removeIf(particle -> !particle.isValid());
+			tickParticles(mc);
+			NUMERIC_PARTICLES.tick();
+		}
+	}
+
+	/**
+	 * Move any particles waiting in the inbox into the live list, if they can be given a place in the shared budgets
+	 */
+	private static void drainInbox() {
+		TESParticle<?> particle;
+
+		while ((particle = PARTICLE_INBOX.poll()) != null) {
+			if (NUMERIC_PARTICLES.reserveExternal(getEntityId(particle))) {
+				PARTICLES.add(particle);
+			}
+			else {
+				PARTICLE_COUNT.decrementAndGet();
+			}
+		}
+	}
+
+	private static int getEntityId(TESParticle<?> particle) {
+		if (!(particle instanceof GenericTESParticle))
+			return -1;
+
+		EntityState entityState = ((GenericTESParticle<?>)particle).getEntityState();
+
+		return entityState == null ? -1 : entityState.getEntity().getId();
+	}
+
+	/**
+	 * Tick all object particles, then remove any that are no longer valid while keeping the remaining particles in order
+	 */
+	private static void tickParticles(Minecraft mc) {
+		int size = PARTICLES.size();
+		int liveCount = 0;
+
+		for (int i = 0; i < size; i++) {
+			TESParticle<?> particle = PARTICLES.get(i);
+
+			particle.tick(mc);
+
+			if (particle.isValid()) {
+				PARTICLES.set(liveCount++, particle);
+			}
+			else {
+				NUMERIC_PARTICLES.releaseExternal(getEntityId(particle));
+			}
 		}
+
+		PARTICLES.size(liveCount);
+		PARTICLE_COUNT.addAndGet(liveCount - size);
+	}
+
+	private static void updateBudgets(Minecraft mc) {
+		TESConfig config = TESAPI.getConfig();
+		LivingEntity target = TESHud.getTargetEntity();
+		Vector3d cameraPos = mc.gameRenderer.getMainCamera().getPosition();
+
+		NUMERIC_PARTICLES.updateBudgets(config.getMaxParticles(), config.getMaxParticlesPerEntity(), target == null ? -1 : target.getId(), config.getParticleRenderDistance(), cameraPos.x, cameraPos.y, cameraPos.z);
 	}
 
 	public static void clearClaims() {
-		CLAIMS.clear();
-		NEW_CLAIMS.forEach(Runnable::run);
-		NEW_CLAIMS.clear();
+		CLAIMS.swap();
 	}
 
-	public static void render(MatrixStack poseStack, float partialTick) {
+	/**
+	 * Render all TES particles.<br>
+	 * Numeric particles are culled against the level renderer's frustum for this frame and the {@link TESConfig#getParticleRenderDistance render distance}, then batched into a single buffer and drawn together at the end.<br>
+	 * Other particles render individually
+	 */
+	public static void render(MatrixStack poseStack, ClippingHelper frustum, float partialTick) {
 		Minecraft mc = Minecraft.getInstance();
 		FontRenderer fontRenderer = mc.font;
 
-		PARTICLES.forEach(particle -> particle.render(poseStack, mc, fontRenderer, partialTick));
+		drainInbox();
+
+		int rendered = PARTICLES.size();
+		int drawCalls = rendered;
+
+		for (int i = 0; i < rendered; i++) {
+			PARTICLES.get(i).render(poseStack, mc, fontRenderer, partialTick);
+		}
+
+		int numericRendered = 0;
+
+		if (NUMERIC_PARTICLES.size() > 0) {
+			numericRendered = NUMERIC_PARTICLES.render(poseStack, mc, fontRenderer, RenderResources.BUFFER_SOURCE, frustum, partialTick);
+
+			if (numericRendered > 0) {
+				RenderResources.BUFFER_SOURCE.endBatch();
+				drawCalls++;
+			}
+		}
+
+		LAST_FRAME_DRAW_CALLS = drawCalls;
+		LAST_FRAME_RENDERED = rendered + numericRendered;
+		LAST_FRAME_CULLED = NUMERIC_PARTICLES.size() - numericRendered;
+	}
+
+	/**
+	 * Get the number of live TES particles, including both numeric and other particles
+	 */
+	public static int getParticleCount() {
+		return NUMERIC_PARTICLES.getBudgetedCount();
+	}
+
+	/**
+	 * Get the number of particle draw batches submitted in the last rendered frame.<br>
+	 * Each individually-rendered particle counts as one, and the batched numeric particles count as one together
+	 */
+	public static int getLastFrameDrawCalls() {
+		return LAST_FRAME_DRAW_CALLS;
+	}
+
+	/**
+	 * Get the number of particles rendered in the last rendered frame
+	 */
+	public static int getLastFrameRenderedParticles() {
+		return LAST_FRAME_RENDERED;
+	}
+
+	/**
+	 * Get the number of particles skipped by frustum or distance culling in the last rendered frame
+	 */
+	public static int getLastFrameCulledParticles() {
+		return LAST_FRAME_CULLED;
+	}
+
+	/**
+	 * Holder for client-only render resources.<br>
+	 * Kept separate so that they are only created on first render, as this class is also loaded on the server through the particle claim API
+	 */
+	private static final class RenderResources {
+		private static final IRenderTypeBuffer.Impl BUFFER_SOURCE = IRenderTypeBuffer.immediate(new BufferBuilder(256));
 	}
 }
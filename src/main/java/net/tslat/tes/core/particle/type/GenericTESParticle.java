@@ -12,7 +12,7 @@ import java.util.concurrent.ThreadLocalRandom;
  * Generic class for TES Particles, with default base handling common to most particle types
  */
 public abstract class GenericTESParticle<D> implements TESParticle<D> {
-	protected static final int DEFAULT_LIFESPAN = 10;
+	public static final int DEFAULT_LIFESPAN = 10;
 
 	protected int lifetime;
 	protected final Vector3f pos;
@@ -39,6 +39,14 @@ public abstract class GenericTESParticle<D> implements TESParticle<D> {
 		this.velocity = animation.getInitialVelocity(this, position, ThreadLocalRandom.current());
 	}
 
+	/**
+	 * Get the state of the entity this particle is for, or null if not for an entity
+	 */
+	@Nullable
+	public EntityState getEntityState() {
+		return this.entityState;
+	}
+
 	@Override
 	public void tick(Minecraft mc) {
 		this.lifetime--;
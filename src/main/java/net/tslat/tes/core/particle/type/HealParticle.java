@@ -7,7 +7,9 @@ import net.tslat.tes.core.state.EntityState;
 
 /**
  * Built-in class for healing-type {@link TESParticle TES Particles}
+ * @deprecated TES no longer uses this class for its own particles. Use {@link net.tslat.tes.core.particle.TESParticleManager#addNumericParticle} with {@link net.tslat.tes.config.TESConfig#getHealParticleColour} instead
  */
+@Deprecated
 public class HealParticle extends NumericParticle {
 	public HealParticle(EntityState entityState, Vector3f position, double amount) {
 		this(entityState, position, Animation.RISE, amount);
@@ -2,6 +2,7 @@ package net.tslat.tes.core.state;
 
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.FontRenderer;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.vector.Vector3f;
@@ -11,54 +12,79 @@ import net.minecraft.util.text.TranslationTextComponent;
 import net.tslat.tes.api.TESAPI;
 import net.tslat.tes.api.TESConstants;
 import net.tslat.tes.api.TESParticle;
+import net.tslat.tes.core.hud.EntityHudLayout;
 import net.tslat.tes.core.particle.TESParticleManager;
 import net.tslat.tes.core.particle.type.ComponentParticle;
-import net.tslat.tes.core.particle.type.DamageParticle;
-import net.tslat.tes.core.particle.type.HealParticle;
 
+import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.Set;
 
 /**
  * Holder class for entity state data.<br>
- * Each rendered entity is assigned one the first time it is rendered.
+ * Each rendered entity is assigned one the first time it is rendered.<br>
+ * Health values are held in a slot of an {@link EntityStateStore}, with this class acting as a view over that slot.<br>
+ * Once a state is {@link EntityState#isReleased released} its slot may be re-used for another entity, so a released state instead reports the values it last held, and no longer ticks
  */
 public class EntityState {
 	protected final LivingEntity entity;
-
-	protected Set<ResourceLocation> effects;
-
-	protected float currentHealth;
-	protected float lastHealth;
-	protected float lastTransitionHealth;
-	protected long lastTransitionTime;
+	protected final EntityStateStore store;
+	protected final int slot;
+	protected final int slotGeneration;
+
+	@Nullable
+	protected Set<ResourceLocation> effects = null;
+	protected int effectsVersion = 0;
+	@Nullable
+	protected EntityHudLayout hudLayout = null;
+	protected float releasedHealth = 0;
+
+	long sectionKey;
+	long lastSubmittedFrame = -1;
+	EntityState lessRecentlyRendered;
+	EntityState moreRecentlyRendered;
 
 	public EntityState(LivingEntity entity) {
+		this(new EntityStateStore(1), entity);
+	}
+
+	public EntityState(EntityStateStore store, LivingEntity entity) {
 		this.entity = entity;
-		this.currentHealth = entity.getHealth();
-		this.lastHealth = this.currentHealth;
+		this.store = store;
+		this.slot = store.allocate(this);
+		this.slotGeneration = store.getSlotGeneration(this.slot);
+		this.store.maxHealth[this.slot] = entity.getMaxHealth();
+		this.store.currentHealth[this.slot] = entity.getHealth();
+		this.store.lastHealth[this.slot] = this.store.currentHealth[this.slot];
 
 		TESConstants.NETWORKING.requestEffectsSync(this.entity.getId());
 	}
 
+	/**
+	 * Whether this state has been released by its store, and no longer reflects its entity's live values
+	 */
+	public boolean isReleased() {
+		return this.store.getSlotGeneration(this.slot) != this.slotGeneration;
+	}
+
 	public LivingEntity getEntity() {
 		return this.entity;
 	}
 
 	public float getHealth() {
-		return this.currentHealth;
+		return isReleased() ? this.releasedHealth : this.store.currentHealth[this.slot];
 	}
 
 	public float getLastHealth() {
-		return this.lastHealth;
+		return isReleased() ? this.releasedHealth : this.store.lastHealth[this.slot];
 	}
 
 	public float getLastTransitionHealth() {
-		return this.lastTransitionHealth;
+		return isReleased() ? this.releasedHealth : this.store.lastTransitionHealth[this.slot];
 	}
 
 	public float getLastTransitionTime() {
-		return this.lastTransitionTime;
+		return isReleased() ? 0 : this.store.lastTransitionTime[this.slot];
 	}
 
 	public Set<ResourceLocation> getEffects() {
@@ -66,14 +92,35 @@ public class EntityState {
 	}
 
 	public void modifyEffects(Set<ResourceLocation> ids, Set<ResourceLocation> idsToRemove) {
-		if (this.effects == null) {
-			this.effects = new ObjectOpenHashSet<>(ids);
-		}
-		else {
-			this.effects.addAll(ids);
-		}
+		if (isReleased())
+			return;
+
+		if (this.effects == null)
+			this.effects = new ObjectOpenHashSet<>();
+
+		this.effects.addAll(ids);
 
 		this.effects.removeAll(idsToRemove);
+		this.effectsVersion++;
+	}
+
+	/**
+	 * Get the version of this state's effect set.<br>
+	 * This changes each time the set is modified, so values derived from the set can be cached against it
+	 */
+	public int getEffectsVersion() {
+		return this.effectsVersion;
+	}
+
+	/**
+	 * Get this state's retained {@link EntityHudLayout}, brought up to date with the entity's current values.<br>
+	 * The layout is only checked against the entity once per frame
+	 */
+	public EntityHudLayout getHudLayout(FontRenderer fontRenderer) {
+		if (this.hudLayout == null)
+			this.hudLayout = new EntityHudLayout();
+
+		return this.hudLayout.updateForFrame(this.entity, getHealth(), getEffects().size(), this.effectsVersion, fontRenderer);
 	}
 	
 	public boolean isValid() {
@@ -81,28 +128,28 @@ public class EntityState {
 	}
 
 	public void tick() {
-		this.currentHealth = Math.min(this.entity.getHealth(), this.entity.getMaxHealth());
+		if (!isReleased())
+			this.store.tickSlot(this.slot, this.entity.level.getGameTime());
+	}
 
-		if (this.currentHealth != this.lastHealth)
-			handleHealthChange();
+	/**
+	 * Release this state's slot back to its store, keeping a snapshot of its health for anything still holding this state.<br>
+	 * Its effects container is kept as-is rather than re-used, as it may still be held by callers of {@link EntityState#getEffects}
+	 */
+	void release() {
+		if (isReleased())
+			return;
 
-		this.lastHealth = currentHealth;
+		this.releasedHealth = getHealth();
 
-		if (this.entity.level.getGameTime() - this.lastTransitionTime > 20) {
-			if (this.lastTransitionHealth > this.currentHealth) {
-				this.lastTransitionHealth -= this.entity.getMaxHealth() / 30f;
-			}
-			else {
-				this.lastTransitionTime = 0;
-				this.lastTransitionHealth = this.currentHealth;
-			}
-		}
+		this.store.release(this.slot);
 	}
 
 	protected void handleHealthChange() {
 		if (TESAPI.getConfig().particlesEnabled()) {
-			TESParticle<?> particle;
-			float healthDelta = this.currentHealth - this.lastHealth;
+			float currentHealth = getHealth();
+			float lastHealth = getLastHealth();
+			float healthDelta = currentHealth - lastHealth;
 
 			if (healthDelta != 0)
 				healthDelta = TESParticleManager.handleParticleClaims(this, healthDelta, TESParticleManager::addParticle);
@@ -110,31 +157,31 @@ public class EntityState {
 			if (healthDelta == 0)
 				return;
 
-			Vector3f particlePos = new Vector3f((float)this.entity.getX(), (float)this.entity.getEyeY() + 0.5f, (float)this.entity.getZ());
+			float particleX = (float)this.entity.getX();
+			float particleY = (float)this.entity.getEyeY() + 0.5f;
+			float particleZ = (float)this.entity.getZ();
 
 			if (healthDelta < 0) {
-				this.lastTransitionTime = this.entity.level.getGameTime();
+				this.store.lastTransitionTime[this.slot] = this.entity.level.getGameTime();
 
-				if (this.lastTransitionHealth == 0)
-					this.lastTransitionHealth = this.lastHealth;
+				if (this.store.lastTransitionHealth[this.slot] == 0)
+					this.store.lastTransitionHealth[this.slot] = lastHealth;
 
-				if (TESAPI.getConfig().verbalHealthParticles() && this.currentHealth <= 0 && this.lastHealth >= this.entity.getMaxHealth()) {
-					particle = new ComponentParticle(this, particlePos, TESParticle.Animation.POP_OFF, new TranslationTextComponent("config.tes.particle.verbal.instakill").setStyle(Style.EMPTY.withColor(Color.fromRgb(TESAPI.getConfig().getDamageParticleColour()))));
+				if (TESAPI.getConfig().verbalHealthParticles() && currentHealth <= 0 && lastHealth >= this.entity.getMaxHealth()) {
+					TESParticleManager.addParticle(new ComponentParticle(this, new Vector3f(particleX, particleY, particleZ), TESParticle.Animation.POP_OFF, new TranslationTextComponent("config.tes.particle.verbal.instakill").setStyle(Style.EMPTY.withColor(Color.fromRgb(TESAPI.getConfig().getDamageParticleColour())))));
 				}
 				else {
-					particle = new DamageParticle(this, particlePos, healthDelta * -1);
+					TESParticleManager.addNumericParticle(this, particleX, particleY, particleZ, TESParticle.Animation.POP_OFF, healthDelta * -1, TESAPI.getConfig().getDamageParticleColour());
 				}
 			}
 			else {
-				if (TESAPI.getConfig().verbalHealthParticles() && this.currentHealth >= this.entity.getMaxHealth() && this.lastHealth <= this.entity.getMaxHealth() * 0.05f) {
-					particle = new ComponentParticle(this, particlePos, TESParticle.Animation.RISE, new TranslationTextComponent("config.tes.particle.verbal.fullHeal").setStyle(Style.EMPTY.withColor(Color.fromRgb(TESAPI.getConfig().getHealParticleColour()))));
+				if (TESAPI.getConfig().verbalHealthParticles() && currentHealth >= this.entity.getMaxHealth() && lastHealth <= this.entity.getMaxHealth() * 0.05f) {
+					TESParticleManager.addParticle(new ComponentParticle(this, new Vector3f(particleX, particleY, particleZ), TESParticle.Animation.RISE, new TranslationTextComponent("config.tes.particle.verbal.fullHeal").setStyle(Style.EMPTY.withColor(Color.fromRgb(TESAPI.getConfig().getHealParticleColour())))));
 				}
 				else {
-					particle = new HealParticle(this, particlePos, healthDelta);
+					TESParticleManager.addNumericParticle(this, particleX, particleY, particleZ, TESParticle.Animation.RISE, healthDelta, TESAPI.getConfig().getHealParticleColour());
 				}
 			}
-
-			TESParticleManager.addParticle(particle);
 		}
 	}
 }
@@ -0,0 +1,309 @@
+package net.tslat.tes.core.state;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.SectionPos;
+
+import javax.annotation.Nullable;
+import java.util.function.Consumer;
+
+/**
+ * Spatial index for tracked {@link EntityState EntityStates}.<br>
+ * States are bucketed by the chunk section their entity was last seen in, so range queries and distance-based eviction only scale with the number of occupied sections.<br>
+ * Buckets are only {@link EntityStateIndex#updateSection updated} when a state is rendered or swept, so may be slightly stale. Section tests allow {@link EntityStateIndex#STALE_SECTION_SLACK} blocks of slack for this, with each state then checked against its entity's live position.<br>
+ * Id lookups are kept in a separate flat map, and remain O(1).<br>
+ * States are also linked in order of when they were last {@link EntityStateIndex#markRendered rendered}, for least-recently-rendered eviction
+ */
+public final class EntityStateIndex {
+	private static final double STALE_SECTION_SLACK = 16;
+
+	private final Int2ObjectOpenHashMap<EntityState> statesById = new Int2ObjectOpenHashMap<>(50);
+	private final Long2ObjectOpenHashMap<ObjectArrayList<EntityState>> sections = new Long2ObjectOpenHashMap<>();
+	@Nullable
+	private EntityState leastRecentlyRendered = null;
+	@Nullable
+	private EntityState mostRecentlyRendered = null;
+
+	@Nullable
+	public EntityState get(int entityId) {
+		return this.statesById.get(entityId);
+	}
+
+	public int size() {
+		return this.statesById.size();
+	}
+
+	public void add(EntityState state) {
+		EntityState existing = this.statesById.put(state.getEntity().getId(), state);
+
+		if (existing != null) {
+			removeFromSection(existing);
+			unlink(existing);
+			existing.release();
+		}
+
+		state.sectionKey = getSectionKey(state.getEntity());
+
+		this.sections.computeIfAbsent(state.sectionKey, key -> new ObjectArrayList<>()).add(state);
+		linkAsMostRecent(state);
+	}
+
+	@Nullable
+	public EntityState remove(int entityId) {
+		EntityState state = this.statesById.remove(entityId);
+
+		if (state != null) {
+			removeFromSection(state);
+			unlink(state);
+			state.release();
+		}
+
+		return state;
+	}
+
+	/**
+	 * Mark the given state as having been the most recently rendered
+	 */
+	public void markRendered(EntityState state) {
+		if (state == this.mostRecentlyRendered)
+			return;
+
+		unlink(state);
+		linkAsMostRecent(state);
+	}
+
+	/**
+	 * Remove up to the given number of states, starting from the least recently rendered.<br>
+	 * States that were submitted for rendering in the given frame are never removed, so eviction stops early once it reaches one.<br>
+	 * Any pending health change for a removed state is handled before it is released
+	 * @param count The number of states to remove
+	 * @param currentFrame The current render frame
+	 * @return The number of states removed
+	 */
+	public int evictLeastRecentlyRendered(int count, long currentFrame) {
+		int removed = 0;
+
+		while (removed < count && this.leastRecentlyRendered != null && this.leastRecentlyRendered.lastSubmittedFrame != currentFrame) {
+			EntityState state = this.leastRecentlyRendered;
+
+			state.store.flush(state.slot);
+			remove(state.getEntity().getId());
+
+			removed++;
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Move the given state into the bucket for its entity's current section, if it has changed since it was last bucketed
+	 */
+	public void updateSection(EntityState state) {
+		long sectionKey = getSectionKey(state.getEntity());
+
+		if (sectionKey == state.sectionKey)
+			return;
+
+		removeFromSection(state);
+
+		state.sectionKey = sectionKey;
+
+		this.sections.computeIfAbsent(sectionKey, key -> new ObjectArrayList<>()).add(state);
+	}
+
+	/**
+	 * Pass every state whose entity is within the given radius of the given position to the consumer.<br>
+	 * Sections are pruned with {@link EntityStateIndex#STALE_SECTION_SLACK slack} for stale buckets, and each state is checked against its entity's live position
+	 */
+	public void forEachInRange(double x, double y, double z, double radius, Consumer<EntityState> consumer) {
+		double radiusSqr = radius * radius;
+		double sectionRadiusSqr = (radius + STALE_SECTION_SLACK) * (radius + STALE_SECTION_SLACK);
+
+		for (Long2ObjectMap.Entry<ObjectArrayList<EntityState>> entry : this.sections.long2ObjectEntrySet()) {
+			if (sectionDistanceSqr(entry.getLongKey(), x, y, z) > sectionRadiusSqr)
+				continue;
+
+			for (EntityState state : entry.getValue()) {
+				if (state.getEntity().distanceToSqr(x, y, z) <= radiusSqr)
+					consumer.accept(state);
+			}
+		}
+	}
+
+	/**
+	 * Remove all states that are further than the given radius from the given position.<br>
+	 * Sections entirely outside the radius are dropped as a whole, and only sections straddling the boundary have their states checked individually.<br>
+	 * Both tests allow {@link EntityStateIndex#STALE_SECTION_SLACK slack} for stale buckets, so a state whose entity has moved a short way since it was last bucketed is not wrongly dropped
+	 * @return The number of states removed
+	 */
+	public int evictOutOfRange(double x, double y, double z, double radius) {
+		double radiusSqr = radius * radius;
+		double innerRadius = Math.max(0, radius - STALE_SECTION_SLACK);
+		double innerRadiusSqr = innerRadius * innerRadius;
+		double outerRadiusSqr = (radius + STALE_SECTION_SLACK) * (radius + STALE_SECTION_SLACK);
+		int removed = 0;
+
+		for (ObjectIterator<Long2ObjectMap.Entry<ObjectArrayList<EntityState>>> iterator = this.sections.long2ObjectEntrySet().fastIterator(); iterator.hasNext();) {
+			Long2ObjectMap.Entry<ObjectArrayList<EntityState>> entry = iterator.next();
+			long sectionKey = entry.getLongKey();
+			ObjectArrayList<EntityState> bucket = entry.getValue();
+
+			if (sectionMaxDistanceSqr(sectionKey, x, y, z) <= innerRadiusSqr)
+				continue;
+
+			if (sectionDistanceSqr(sectionKey, x, y, z) > outerRadiusSqr) {
+				for (EntityState state : bucket) {
+					this.statesById.remove(state.getEntity().getId());
+					unlink(state);
+					state.release();
+				}
+
+				removed += bucket.size();
+
+				iterator.remove();
+
+				continue;
+			}
+
+			for (int i = bucket.size() - 1; i >= 0; i--) {
+				EntityState state = bucket.get(i);
+
+				if (state.getEntity().distanceToSqr(x, y, z) > radiusSqr) {
+					this.statesById.remove(state.getEntity().getId());
+					removeFromBucket(bucket, i);
+					unlink(state);
+					state.release();
+					removed++;
+				}
+			}
+
+			if (bucket.isEmpty())
+				iterator.remove();
+		}
+
+		return removed;
+	}
+
+	public void clear() {
+		for (EntityState state : this.statesById.values()) {
+			state.lessRecentlyRendered = null;
+			state.moreRecentlyRendered = null;
+
+			state.release();
+		}
+
+		this.statesById.clear();
+		this.sections.clear();
+
+		this.leastRecentlyRendered = null;
+		this.mostRecentlyRendered = null;
+	}
+
+	/**
+	 * Estimate the heap retained by this index's own structures, excluding the states themselves
+	 */
+	public long estimateHeapBytes() {
+		long bytes = 64 + this.statesById.size() * 2L * (4 + 8);
+
+		bytes += this.sections.size() * (2L * (8 + 8) + 40);
+		bytes += this.statesById.size() * 8L;
+
+		return bytes;
+	}
+
+	private void linkAsMostRecent(EntityState state) {
+		state.lessRecentlyRendered = this.mostRecentlyRendered;
+		state.moreRecentlyRendered = null;
+
+		if (this.mostRecentlyRendered != null) {
+			this.mostRecentlyRendered.moreRecentlyRendered = state;
+		}
+		else {
+			this.leastRecentlyRendered = state;
+		}
+
+		this.mostRecentlyRendered = state;
+	}
+
+	private void unlink(EntityState state) {
+		if (state.lessRecentlyRendered != null) {
+			state.lessRecentlyRendered.moreRecentlyRendered = state.moreRecentlyRendered;
+		}
+		else if (this.leastRecentlyRendered == state) {
+			this.leastRecentlyRendered = state.moreRecentlyRendered;
+		}
+
+		if (state.moreRecentlyRendered != null) {
+			state.moreRecentlyRendered.lessRecentlyRendered = state.lessRecentlyRendered;
+		}
+		else if (this.mostRecentlyRendered == state) {
+			this.mostRecentlyRendered = state.lessRecentlyRendered;
+		}
+
+		state.lessRecentlyRendered = null;
+		state.moreRecentlyRendered = null;
+	}
+
+	private void removeFromSection(EntityState state) {
+		ObjectArrayList<EntityState> bucket = this.sections.get(state.sectionKey);
+
+		if (bucket == null)
+			return;
+
+		int index = bucket.indexOf(state);
+
+		if (index >= 0)
+			removeFromBucket(bucket, index);
+
+		if (bucket.isEmpty())
+			this.sections.remove(state.sectionKey);
+	}
+
+	private static void removeFromBucket(ObjectArrayList<EntityState> bucket, int index) {
+		int last = bucket.size() - 1;
+
+		if (index != last)
+			bucket.set(index, bucket.get(last));
+
+		bucket.remove(last);
+	}
+
+	private static long getSectionKey(LivingEntity entity) {
+		return SectionPos.asLong(SectionPos.blockToSectionCoord(MathHelper.floor(entity.getX())), SectionPos.blockToSectionCoord(MathHelper.floor(entity.getY())), SectionPos.blockToSectionCoord(MathHelper.floor(entity.getZ())));
+	}
+
+	private static double sectionDistanceSqr(long sectionKey, double x, double y, double z) {
+		double dx = axisDistance(SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey)), x);
+		double dy = axisDistance(SectionPos.sectionToBlockCoord(SectionPos.y(sectionKey)), y);
+		double dz = axisDistance(SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey)), z);
+
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private static double sectionMaxDistanceSqr(long sectionKey, double x, double y, double z) {
+		double dx = axisMaxDistance(SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey)), x);
+		double dy = axisMaxDistance(SectionPos.sectionToBlockCoord(SectionPos.y(sectionKey)), y);
+		double dz = axisMaxDistance(SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey)), z);
+
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private static double axisDistance(int sectionMin, double pos) {
+		if (pos < sectionMin)
+			return sectionMin - pos;
+
+		if (pos > sectionMin + 16)
+			return pos - (sectionMin + 16);
+
+		return 0;
+	}
+
+	private static double axisMaxDistance(int sectionMin, double pos) {
+		return Math.max(Math.abs(pos - sectionMin), Math.abs(pos - (sectionMin + 16)));
+	}
+}
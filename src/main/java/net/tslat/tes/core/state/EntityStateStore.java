@@ -0,0 +1,428 @@
+package net.tslat.tes.core.state;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.tslat.tes.api.TESAPI;
+import net.tslat.tes.config.TESConfig;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Columnar backing store for {@link EntityState} health data.<br>
+ * Each state is assigned a slot, with its values held in primitive per-slot arrays rather than on the state itself.<br>
+ * This keeps the per-tick health-diff pass a tight loop over contiguous memory instead of a walk over scattered heap objects.<br>
+ * Only slots {@link EntityStateStore#markDirty marked dirty} or still mid-transition are processed, at a rate determined by their entity's distance from the camera
+ */
+public final class EntityStateStore {
+	private static final int PARTITION_SIZE = 256;
+
+	private final IntArrayList freeSlots = new IntArrayList();
+	private final IntArrayList dirtySlots = new IntArrayList();
+	private int slotCount = 0;
+	private int[] tickingSlots;
+	private int[] changedSlots;
+	private boolean[] dirty;
+	private int[] updateInterval;
+	private int[] tickResults;
+	private int[] slotGenerations;
+
+	private long tickGameTime;
+	private double tickCameraX;
+	private double tickCameraY;
+	private double tickCameraZ;
+	private double nearTierDistanceSqr;
+	private double midTierDistanceSqr;
+	private int midTierInterval;
+	private int farTierInterval;
+
+	private int lastTickSlots = 0;
+	private long lastTickNanos = 0;
+
+	EntityState[] states;
+	float[] currentHealth;
+	float[] lastHealth;
+	float[] maxHealth;
+	float[] lastTransitionHealth;
+	long[] lastTransitionTime;
+
+	public EntityStateStore(int initialCapacity) {
+		initialCapacity = Math.max(1, initialCapacity);
+
+		this.states = new EntityState[initialCapacity];
+		this.currentHealth = new float[initialCapacity];
+		this.lastHealth = new float[initialCapacity];
+		this.maxHealth = new float[initialCapacity];
+		this.lastTransitionHealth = new float[initialCapacity];
+		this.lastTransitionTime = new long[initialCapacity];
+		this.tickingSlots = new int[initialCapacity];
+		this.changedSlots = new int[initialCapacity];
+		this.dirty = new boolean[initialCapacity];
+		this.updateInterval = new int[initialCapacity];
+		this.tickResults = new int[initialCapacity];
+		this.slotGenerations = new int[initialCapacity];
+	}
+
+	/**
+	 * Get the number of states currently occupying a slot in this store
+	 */
+	public int size() {
+		return this.slotCount - this.freeSlots.size();
+	}
+
+	/**
+	 * Get the number of slots currently in use by this store, including freed slots awaiting reuse
+	 */
+	public int getSlotCount() {
+		return this.slotCount;
+	}
+
+	/**
+	 * Estimate the heap retained by this store, including the states occupying its slots
+	 */
+	public long estimateHeapBytes() {
+		int capacity = this.states.length;
+		long bytes = 128;
+
+		// Per-slot columns: state reference, 4 floats, 1 long, 5 ints, 1 boolean
+		bytes += capacity * (8L + 4 * 4 + 8 + 5 * 4 + 1);
+		bytes += (this.freeSlots.size() + this.dirtySlots.size()) * 4L;
+
+		for (int slot = 0; slot < this.slotCount; slot++) {
+			EntityState state = this.states[slot];
+
+			if (state != null)
+				bytes += estimateStateBytes(state);
+		}
+
+		return bytes;
+	}
+
+	private static long estimateStateBytes(EntityState state) {
+		long bytes = 64;
+
+		if (state.effects != null)
+			bytes += 48 + state.effects.size() * 16L;
+
+		return bytes;
+	}
+
+	/**
+	 * Get the state occupying the given slot, or null if the slot is free
+	 */
+	@Nullable
+	public EntityState getState(int slot) {
+		return this.states[slot];
+	}
+
+	/**
+	 * Get the generation of the given slot.<br>
+	 * This increments each time the slot is released, so that a state can tell whether its slot has since been handed to another state
+	 */
+	public int getSlotGeneration(int slot) {
+		return this.slotGenerations[slot];
+	}
+
+	int allocate(EntityState state) {
+		int slot;
+
+		if (!this.freeSlots.isEmpty()) {
+			slot = this.freeSlots.popInt();
+		}
+		else {
+			if (this.slotCount == this.states.length)
+				grow(this.states.length * 2);
+
+			slot = this.slotCount++;
+		}
+
+		this.states[slot] = state;
+		this.currentHealth[slot] = 0;
+		this.lastHealth[slot] = 0;
+		this.maxHealth[slot] = 0;
+		this.lastTransitionHealth[slot] = 0;
+		this.lastTransitionTime[slot] = 0;
+		this.updateInterval[slot] = 1;
+
+		markDirty(slot);
+
+		return slot;
+	}
+
+	/**
+	 * Mark a slot as needing processing on the next tick, usually due to its entity's health having been updated
+	 */
+	void markDirty(int slot) {
+		if (this.dirty[slot])
+			return;
+
+		this.dirty[slot] = true;
+		this.dirtySlots.add(slot);
+	}
+
+	void release(int slot) {
+		EntityState state = this.states[slot];
+
+		if (state == null)
+			return;
+
+		this.states[slot] = null;
+		this.slotGenerations[slot]++;
+		this.freeSlots.add(slot);
+	}
+
+	void clear() {
+		for (int slot = 0; slot < this.slotCount; slot++) {
+			this.slotGenerations[slot]++;
+		}
+
+		Arrays.fill(this.states, 0, this.slotCount, null);
+		Arrays.fill(this.dirty, 0, this.slotCount, false);
+		this.freeSlots.clear();
+		this.dirtySlots.clear();
+
+		this.slotCount = 0;
+	}
+
+	/**
+	 * Tick every dirty or transitioning slot in the store that is due an update.<br>
+	 * Slots are tiered by their entity's distance from the given camera position, with further tiers only updating every few ticks.
+	 * Slots not due an update remain dirty, so any health changes in the meantime are handled together once they are.<br>
+	 * Entity health values are gathered first, then the health-diff and transition decay are run as primitive passes over the columns.
+	 * If {@link TESConfig#parallelStateUpdates() enabled}, these passes are split into partitions and run in parallel, with health changes still handled on the calling thread.<br>
+	 * Slots whose transition health has not yet settled are re-queued for the following tick
+	 */
+	public void tick(long gameTime, double cameraX, double cameraY, double cameraZ) {
+		TESConfig config = TESAPI.getConfig();
+		long startTime = System.nanoTime();
+		int dirtyCount = this.dirtySlots.size();
+		int tickingCount = 0;
+		int changedCount = 0;
+		boolean parallel = config.parallelStateUpdates() && dirtyCount >= config.getParallelStateUpdateThreshold();
+
+		this.tickGameTime = gameTime;
+		this.tickCameraX = cameraX;
+		this.tickCameraY = cameraY;
+		this.tickCameraZ = cameraZ;
+		this.nearTierDistanceSqr = config.getNearUpdateTierDistance() * config.getNearUpdateTierDistance();
+		this.midTierDistanceSqr = config.getMidUpdateTierDistance() * config.getMidUpdateTierDistance();
+		this.midTierInterval = config.getMidUpdateTierInterval();
+		this.farTierInterval = config.getFarUpdateTierInterval();
+
+		this.dirtySlots.getElements(0, this.tickingSlots, 0, dirtyCount);
+		this.dirtySlots.clear();
+
+		runPartitioned(dirtyCount, parallel, this::gatherSlots);
+
+		for (int i = 0; i < dirtyCount; i++) {
+			int slot = this.tickingSlots[i];
+			int interval = this.tickResults[i];
+
+			if (interval < 0) {
+				this.dirtySlots.add(slot);
+
+				continue;
+			}
+
+			this.dirty[slot] = false;
+
+			if (interval == 0)
+				continue;
+
+			this.updateInterval[slot] = interval;
+			this.tickingSlots[tickingCount++] = slot;
+
+			if (this.currentHealth[slot] != this.lastHealth[slot])
+				this.changedSlots[changedCount++] = slot;
+		}
+
+		for (int i = 0; i < changedCount; i++) {
+			this.states[this.changedSlots[i]].handleHealthChange();
+		}
+
+		runPartitioned(tickingCount, parallel, this::decaySlots);
+
+		for (int i = 0; i < tickingCount; i++) {
+			if (this.tickResults[i] != 0)
+				markDirty(this.tickingSlots[i]);
+		}
+
+		this.lastTickSlots = tickingCount;
+		this.lastTickNanos = System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Get the number of slots updated during the last {@link EntityStateStore#tick tick}
+	 */
+	public int getLastTickSlots() {
+		return this.lastTickSlots;
+	}
+
+	/**
+	 * Get how long (in nanoseconds) the last {@link EntityStateStore#tick tick} took, including health change handling
+	 */
+	public long getLastTickNanos() {
+		return this.lastTickNanos;
+	}
+
+	/**
+	 * Read the current health values for the dirty slots in the given range, if they are due an update.<br>
+	 * Stores the slot's update interval in the matching tick result, or -1 if it is not yet due, or 0 if the slot has been freed.<br>
+	 * Slots for dead entities are always due, so that the killing blow is handled before the state is dropped.<br>
+	 * Only reads from the slot's entity, and only writes to indices owned by the given range, so is safe to run across partitions in parallel
+	 */
+	private void gatherSlots(int from, int to) {
+		for (int i = from; i < to; i++) {
+			int slot = this.tickingSlots[i];
+			EntityState state = this.states[slot];
+
+			if (state == null) {
+				this.tickResults[i] = 0;
+
+				continue;
+			}
+
+			double distanceSqr = state.entity.distanceToSqr(this.tickCameraX, this.tickCameraY, this.tickCameraZ);
+			int interval = distanceSqr <= this.nearTierDistanceSqr ? 1 : distanceSqr <= this.midTierDistanceSqr ? this.midTierInterval : this.farTierInterval;
+
+			if (interval > 1 && (this.tickGameTime + slot) % interval != 0 && state.entity.getHealth() > 0) {
+				this.tickResults[i] = -1;
+
+				continue;
+			}
+
+			float max = state.entity.getMaxHealth();
+
+			this.maxHealth[slot] = max;
+			this.currentHealth[slot] = Math.min(state.entity.getHealth(), max);
+			this.tickResults[i] = interval;
+		}
+	}
+
+	/**
+	 * Roll the health values over and decay the transition health for the ticking slots in the given range.<br>
+	 * Stores 1 in the matching tick result if the slot is still mid-transition, or 0 otherwise.<br>
+	 * Only touches the columns for slots owned by the given range, so is safe to run across partitions in parallel
+	 */
+	private void decaySlots(int from, int to) {
+		for (int i = from; i < to; i++) {
+			int slot = this.tickingSlots[i];
+
+			this.lastHealth[slot] = this.currentHealth[slot];
+
+			decayTransition(slot, this.tickGameTime);
+
+			this.tickResults[i] = this.lastTransitionTime[slot] != 0 || this.lastTransitionHealth[slot] != this.currentHealth[slot] ? 1 : 0;
+		}
+	}
+
+	private static void runPartitioned(int count, boolean parallel, SlotRangeTask task) {
+		if (count == 0)
+			return;
+
+		if (parallel && count > PARTITION_SIZE) {
+			ForkJoinPool.commonPool().invoke(new SlotPartitionAction(task, 0, count));
+		}
+		else {
+			task.run(0, count);
+		}
+	}
+
+	/**
+	 * Handle any pending health change for a dirty slot immediately, ahead of the slot being released.<br>
+	 * The slot is left in the dirty queue, and is dropped from it on the next {@link EntityStateStore#tick tick} once freed
+	 */
+	void flush(int slot) {
+		EntityState state = this.states[slot];
+
+		if (!this.dirty[slot] || state == null)
+			return;
+
+		float max = state.entity.getMaxHealth();
+
+		this.maxHealth[slot] = max;
+		this.currentHealth[slot] = Math.min(state.entity.getHealth(), max);
+
+		if (this.currentHealth[slot] != this.lastHealth[slot])
+			state.handleHealthChange();
+
+		this.lastHealth[slot] = this.currentHealth[slot];
+	}
+
+	/**
+	 * Tick a single slot in the store, for states being ticked individually
+	 */
+	void tickSlot(int slot, long gameTime) {
+		EntityState state = this.states[slot];
+		float max = state.entity.getMaxHealth();
+
+		this.maxHealth[slot] = max;
+		this.currentHealth[slot] = Math.min(state.entity.getHealth(), max);
+
+		if (this.currentHealth[slot] != this.lastHealth[slot])
+			state.handleHealthChange();
+
+		this.lastHealth[slot] = this.currentHealth[slot];
+		this.updateInterval[slot] = 1;
+
+		decayTransition(slot, gameTime);
+	}
+
+	private void decayTransition(int slot, long gameTime) {
+		if (gameTime - this.lastTransitionTime[slot] > 20) {
+			if (this.lastTransitionHealth[slot] > this.currentHealth[slot]) {
+				this.lastTransitionHealth[slot] -= this.maxHealth[slot] / 30f * this.updateInterval[slot];
+			}
+			else {
+				this.lastTransitionTime[slot] = 0;
+				this.lastTransitionHealth[slot] = this.currentHealth[slot];
+			}
+		}
+	}
+
+	private void grow(int capacity) {
+		this.states = Arrays.copyOf(this.states, capacity);
+		this.currentHealth = Arrays.copyOf(this.currentHealth, capacity);
+		this.lastHealth = Arrays.copyOf(this.lastHealth, capacity);
+		this.maxHealth = Arrays.copyOf(this.maxHealth, capacity);
+		this.lastTransitionHealth = Arrays.copyOf(this.lastTransitionHealth, capacity);
+		this.lastTransitionTime = Arrays.copyOf(this.lastTransitionTime, capacity);
+		this.tickingSlots = Arrays.copyOf(this.tickingSlots, capacity);
+		this.changedSlots = Arrays.copyOf(this.changedSlots, capacity);
+		this.dirty = Arrays.copyOf(this.dirty, capacity);
+		this.updateInterval = Arrays.copyOf(this.updateInterval, capacity);
+		this.tickResults = Arrays.copyOf(this.tickResults, capacity);
+		this.slotGenerations = Arrays.copyOf(this.slotGenerations, capacity);
+	}
+
+	@FunctionalInterface
+	private interface SlotRangeTask {
+		void run(int from, int to);
+	}
+
+	private static class SlotPartitionAction extends RecursiveAction {
+		private final SlotRangeTask task;
+		private final int from;
+		private final int to;
+
+		private SlotPartitionAction(SlotRangeTask task, int from, int to) {
+			this.task = task;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= PARTITION_SIZE) {
+				this.task.run(this.from, this.to);
+
+				return;
+			}
+
+			int mid = (this.from + this.to) >>> 1;
+
+			invokeAll(new SlotPartitionAction(this.task, this.from, mid), new SlotPartitionAction(this.task, mid, this.to));
+		}
+	}
+}
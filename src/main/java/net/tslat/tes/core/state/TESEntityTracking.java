@@ -1,39 +1,167 @@
 package net.tslat.tes.core.state;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.LivingEntity;
+import net.minecraft.util.math.MathHelper;
 import net.tslat.tes.api.TESAPI;
 import net.tslat.tes.core.particle.TESParticleManager;
 
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.function.Consumer;
 
 public final class TESEntityTracking {
-	private static final Int2ObjectOpenHashMap<EntityState> ENTITY_STATES = new Int2ObjectOpenHashMap<>(50);
+	private static final EntityStateStore STATE_STORE = new EntityStateStore(64);
+	private static final EntityStateIndex ENTITY_STATES = new EntityStateIndex();
 	private static List<LivingEntity> ENTITIES_TO_RENDER = new ObjectArrayList<>();
 	private static IntSet RENDERED_NAMES = new IntOpenHashSet();
 
-	public static void accountForEntity(LivingEntity entity) {
-		ENTITY_STATES.compute(entity.getId(), (key, value) -> {
+	private static ClientWorld TRACKED_LEVEL = null;
+	private static int SWEEP_CURSOR = 0;
+
+	private static long RENDER_FRAME = 0;
+	private static int DUPLICATE_SUBMISSIONS = 0;
+	private static int LAST_FRAME_DUPLICATE_SUBMISSIONS = 0;
+	private static long TOTAL_DUPLICATE_SUBMISSIONS = 0;
+
+	/**
+	 * Account for an entity being rendered, creating its {@link EntityState} if it is within tracking distance.<br>
+	 * Only the first submission of an entity each frame is accepted, repeat submissions from shadow passes, mirrors, multipart entities, etc. are dropped.<br>
+	 * If the {@link net.tslat.tes.config.TESConfig#getMaxTrackedEntities() tracking limit} has been reached, the least recently rendered state is dropped to make room, unless it has already been rendered this frame, in which case the new entity isn't tracked
+	 * @return Whether the entity is tracked and this was its first submission for the current frame
+	 */
+	public static boolean accountForEntity(LivingEntity entity) {
+		validateLevelShard();
+
+		EntityState state = ENTITY_STATES.get(entity.getId());
+
+		if (state == null) {
 			double trackingDist = TESAPI.getConfig().getEntityTrackingDistance();
 
-			if (entity.distanceToSqr((Minecraft.getInstance().cameraEntity == null ? Minecraft.getInstance().player : Minecraft.getInstance().cameraEntity)) > trackingDist * trackingDist)
-				return null;
+			if (entity.distanceToSqr(getCameraEntity()) > trackingDist * trackingDist)
+				return false;
+
+			int maxTrackedEntities = TESAPI.getConfig().getMaxTrackedEntities();
+
+			if (ENTITY_STATES.size() >= maxTrackedEntities) {
+				int excess = ENTITY_STATES.size() - maxTrackedEntities + 1;
+
+				if (ENTITY_STATES.evictLeastRecentlyRendered(excess, RENDER_FRAME) < excess)
+					return false;
+			}
 
-			return value == null ? new EntityState(entity) : value;
-		});
+			ENTITY_STATES.add(state = new EntityState(STATE_STORE, entity));
+		}
+		else {
+			if (state.lastSubmittedFrame == RENDER_FRAME) {
+				DUPLICATE_SUBMISSIONS++;
+
+				return false;
+			}
+
+			ENTITY_STATES.updateSection(state);
+			ENTITY_STATES.markRendered(state);
+		}
+
+		state.lastSubmittedFrame = RENDER_FRAME;
+
+		return true;
 	}
 
 	public static void tick() {
+		Entity cameraEntity = getCameraEntity();
+
+		validateLevelShard();
+
 		TESParticleManager.clearClaims();
-		ENTITY_STATES.values().forEach(EntityState::tick);
+		ENTITY_STATES.evictOutOfRange(cameraEntity.getX(), cameraEntity.getY(), cameraEntity.getZ(), TESAPI.getConfig().getEntityTrackingDistance());
+		STATE_STORE.tick(Minecraft.getInstance().level.getGameTime(), cameraEntity.getX(), cameraEntity.getY(), cameraEntity.getZ());
+		sweepStates();
+	}
+
+	/**
+	 * Validate a bounded number of cached states, continuing on from where the previous tick's sweep left off.<br>
+	 * Any pending health change for an invalid state is handled before it is dropped, so that its final damage particle isn't lost.<br>
+	 * Valid states are re-bucketed by their entity's current section, so that states for entities that aren't being rendered don't keep a stale section for long.<br>
+	 * The budget scales up with the cache size so that a full pass never takes longer than {@link net.tslat.tes.config.TESConfig#getCacheCleanFrequency()} ticks
+	 */
+	private static void sweepStates() {
+		int slotCount = STATE_STORE.getSlotCount();
+
+		if (slotCount == 0)
+			return;
+
+		int budget = Math.min(slotCount, Math.max(TESAPI.getConfig().getCacheSweepBudget(), MathHelper.ceil(slotCount / (float)TESAPI.getConfig().getCacheCleanFrequency())));
+
+		for (int i = 0; i < budget; i++) {
+			if (SWEEP_CURSOR >= slotCount)
+				SWEEP_CURSOR = 0;
+
+			EntityState state = STATE_STORE.getState(SWEEP_CURSOR++);
+
+			if (state == null)
+				continue;
+
+			if (state.isValid()) {
+				ENTITY_STATES.updateSection(state);
+			}
+			else {
+				STATE_STORE.flush(state.slot);
+				ENTITY_STATES.remove(state.getEntity().getId());
+			}
+		}
+	}
+
+	/**
+	 * Drop every tracked state, releasing their slots.<br>
+	 * States are sharded per client level, and the whole shard is dropped the moment the level changes so that no tracked state outlives its level
+	 */
+	public static void clearLevelShard() {
+		ENTITY_STATES.clear();
+		STATE_STORE.clear();
+		ENTITIES_TO_RENDER.clear();
+		RENDERED_NAMES.clear();
+
+		TRACKED_LEVEL = null;
+		SWEEP_CURSOR = 0;
+	}
+
+	private static void validateLevelShard() {
+		ClientWorld level = Minecraft.getInstance().level;
+
+		if (level != TRACKED_LEVEL) {
+			clearLevelShard();
 
-		if (Minecraft.getInstance().level.getGameTime() % TESAPI.getConfig().getCacheCleanFrequency() == 0)
-			ENTITY_STATES.values().removeIf(state -> !state.isValid());
+			TRACKED_LEVEL = level;
+		}
+	}
+
+	/**
+	 * Immediately drop the state for an entity that has been removed from the client level, if one exists
+	 */
+	public static void onEntityRemoved(int entityId) {
+		EntityState state = ENTITY_STATES.get(entityId);
+
+		if (state == null)
+			return;
+
+		STATE_STORE.flush(state.slot);
+		ENTITY_STATES.remove(entityId);
+	}
+
+	/**
+	 * Flag an entity's health as having been updated, so that its state is processed on the next tick
+	 */
+	public static void markHealthDirty(int entityId) {
+		EntityState state = ENTITY_STATES.get(entityId);
+
+		if (state != null)
+			STATE_STORE.markDirty(state.slot);
 	}
 
 	public static void addEntityToRender(LivingEntity entity) {
@@ -47,18 +175,77 @@ public final class TESEntityTracking {
 
 	@Nullable
 	public static EntityState getStateForEntityId(int id) {
+		if (Minecraft.getInstance().level != TRACKED_LEVEL)
+			return null;
+
 		return ENTITY_STATES.get(id);
 	}
 
+	/**
+	 * Pass every tracked {@link EntityState} within the given distance (in blocks) of the camera to the consumer
+	 */
+	public static void forEachStateInRange(double distance, Consumer<EntityState> consumer) {
+		Entity cameraEntity = getCameraEntity();
+
+		ENTITY_STATES.forEachInRange(cameraEntity.getX(), cameraEntity.getY(), cameraEntity.getZ(), distance, consumer);
+	}
+
 	public static List<LivingEntity> getEntitiesToRender() {
 		List<LivingEntity> entities = ENTITIES_TO_RENDER;
 		ENTITIES_TO_RENDER = new ObjectArrayList<>(ENTITIES_TO_RENDER.size());
 
 		RENDERED_NAMES.clear();
 
+		RENDER_FRAME++;
+		TOTAL_DUPLICATE_SUBMISSIONS += DUPLICATE_SUBMISSIONS;
+		LAST_FRAME_DUPLICATE_SUBMISSIONS = DUPLICATE_SUBMISSIONS;
+		DUPLICATE_SUBMISSIONS = 0;
+
 		return entities;
 	}
 
+	/**
+	 * Get the number of entity states currently being tracked
+	 */
+	public static int getTrackedStateCount() {
+		return ENTITY_STATES.size();
+	}
+
+	/**
+	 * Get a rough estimate of the heap (in bytes) currently retained by TES' entity tracking, not including the entities themselves
+	 */
+	public static long getEstimatedHeapUsage() {
+		return STATE_STORE.estimateHeapBytes() + ENTITY_STATES.estimateHeapBytes();
+	}
+
+	/**
+	 * Get the number of entity states updated during the last tick
+	 */
+	public static int getLastTickUpdatedStates() {
+		return STATE_STORE.getLastTickSlots();
+	}
+
+	/**
+	 * Get how long (in nanoseconds) the last tick's entity state update took
+	 */
+	public static long getLastTickUpdateNanos() {
+		return STATE_STORE.getLastTickNanos();
+	}
+
+	/**
+	 * Get the number of repeat entity submissions dropped during the last completed frame
+	 */
+	public static int getLastFrameDuplicateSubmissions() {
+		return LAST_FRAME_DUPLICATE_SUBMISSIONS;
+	}
+
+	/**
+	 * Get the total number of repeat entity submissions dropped since startup
+	 */
+	public static long getTotalDuplicateSubmissions() {
+		return TOTAL_DUPLICATE_SUBMISSIONS;
+	}
+
 	public static boolean wasNameRendered(int entityId) {
 		return RENDERED_NAMES.contains(entityId);
 	}
@@ -66,4 +253,10 @@ public final class TESEntityTracking {
 	public static void markNameRendered(LivingEntity entity) {
 		RENDERED_NAMES.add(entity.getId());
 	}
+
+	private static Entity getCameraEntity() {
+		Minecraft mc = Minecraft.getInstance();
+
+		return mc.cameraEntity == null ? mc.player : mc.cameraEntity;
+	}
 }
@@ -0,0 +1,16 @@
+package net.tslat.tes.mixin.client;
+
+import net.minecraft.client.world.ClientWorld;
+import net.tslat.tes.core.state.TESEntityTracking;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ClientWorld.class)
+public class ClientLevelMixin {
+	@Inject(method = "removeEntity", at = @At("HEAD"))
+	private void onEntityRemoved(int entityId, CallbackInfo callback) {
+		TESEntityTracking.onEntityRemoved(entityId);
+	}
+}
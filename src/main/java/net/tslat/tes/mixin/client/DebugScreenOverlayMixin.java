@@ -0,0 +1,26 @@
+package net.tslat.tes.mixin.client;
+
+import net.minecraft.client.gui.overlay.DebugOverlayGui;
+import net.tslat.tes.api.TESConstants;
+import net.tslat.tes.core.hud.InWorldHudBatch;
+import net.tslat.tes.core.particle.TESParticleManager;
+import net.tslat.tes.core.state.TESEntityTracking;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.util.List;
+
+@Mixin(DebugOverlayGui.class)
+public class DebugScreenOverlayMixin {
+	@Inject(method = "getGameInformation", at = @At("RETURN"))
+	private void addTESInfo(CallbackInfoReturnable<List<String>> callback) {
+		List<String> lines = callback.getReturnValue();
+
+		lines.add("");
+		lines.add(String.format("[%s] States: %d (~%d KB), Updated: %d in %.3fms, Dropped submissions: %d", TESConstants.MOD_NAME, TESEntityTracking.getTrackedStateCount(), TESEntityTracking.getEstimatedHeapUsage() / 1024, TESEntityTracking.getLastTickUpdatedStates(), TESEntityTracking.getLastTickUpdateNanos() / 1000000d, TESEntityTracking.getLastFrameDuplicateSubmissions()));
+		lines.add(String.format("[%s] Particles: %d, Drawn: %d, Culled: %d, Draw calls: %d", TESConstants.MOD_NAME, TESParticleManager.getParticleCount(), TESParticleManager.getLastFrameRenderedParticles(), TESParticleManager.getLastFrameCulledParticles(), TESParticleManager.getLastFrameDrawCalls()));
+		lines.add(String.format("[%s] In-world HUD draw calls: %d", TESConstants.MOD_NAME, InWorldHudBatch.getLastFrameDrawCalls()));
+	}
+}
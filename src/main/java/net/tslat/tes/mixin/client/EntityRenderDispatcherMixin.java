@@ -24,9 +24,7 @@ public class EntityRenderDispatcherMixin {
 	private <E extends Entity> void onEntityRender(E entity, double posX, double posY, double posZ, float rotYaw, float partialTick, MatrixStack poseStack, IRenderTypeBuffer bufferSource, int packedLight, CallbackInfo callback) {
 		LivingEntity target = TESConstants.UTILS.getLivingEntityIfPossible(entity);
 
-		if (TESUtil.isVisibleToPlayer(target, TESClientUtil.getClientPlayer())) {
-			TESEntityTracking.accountForEntity(target);
-
+		if (TESUtil.isVisibleToPlayer(target, TESClientUtil.getClientPlayer()) && TESEntityTracking.accountForEntity(target)) {
 			if (TESAPI.getConfig().inWorldBarsEnabled())
 				TESEntityTracking.addEntityToRender(target);
 		}
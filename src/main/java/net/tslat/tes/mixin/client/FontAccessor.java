@@ -0,0 +1,13 @@
+package net.tslat.tes.mixin.client;
+
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.gui.fonts.Font;
+import net.minecraft.util.ResourceLocation;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(FontRenderer.class)
+public interface FontAccessor {
+	@Invoker("getFontSet")
+	Font invokeGetFontSet(ResourceLocation fontId);
+}
@@ -0,0 +1,11 @@
+package net.tslat.tes.mixin.client;
+
+import net.minecraft.client.renderer.culling.ClippingHelper;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(ClippingHelper.class)
+public interface FrustumAccessor {
+	@Invoker("cubeInFrustum")
+	boolean invokeCubeInFrustum(double minX, double minY, double minZ, double maxX, double maxY, double maxZ);
+}
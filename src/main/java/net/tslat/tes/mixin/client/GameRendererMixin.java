@@ -3,6 +3,7 @@ package net.tslat.tes.mixin.client;
 import com.mojang.blaze3d.matrix.MatrixStack;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.GameRenderer;
+import net.tslat.tes.core.hud.EntityHudLayout;
 import net.tslat.tes.core.hud.TESHud;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
@@ -11,6 +12,11 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 @Mixin(GameRenderer.class)
 public class GameRendererMixin {
+	@Inject(method = "render", at = @At(value = "HEAD"))
+	private void startTESFrame(float partialTick, long nanoTime, boolean renderLevel, CallbackInfo callback) {
+		EntityHudLayout.nextFrame();
+	}
+
 	@Inject(method = "pick", at = @At(value = "INVOKE", target = "Lnet/minecraft/profiler/IProfiler;pop()V"))
 	private void pickTES(float partialTick, CallbackInfo callback) {
 		TESHud.pickNewEntity(partialTick);
@@ -0,0 +1,26 @@
+package net.tslat.tes.mixin.client;
+
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.network.datasync.DataParameter;
+import net.tslat.tes.core.state.TESEntityTracking;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(LivingEntity.class)
+public class LivingEntityMixin {
+	@Shadow
+	@Final
+	private static DataParameter<Float> DATA_HEALTH_ID;
+
+	@Inject(method = "onSyncedDataUpdated", at = @At("HEAD"))
+	private void onHealthUpdated(DataParameter<?> key, CallbackInfo callback) {
+		LivingEntity self = (LivingEntity)(Object)this;
+
+		if (self.level.isClientSide && DATA_HEALTH_ID.equals(key))
+			TESEntityTracking.markHealthDirty(self.getId());
+	}
+}
@@ -17,4 +17,9 @@ public class MinecraftMixin {
 			TESEntityTracking.tick();
 		}
 	}
+
+	@Inject(method = {"setLevel", "clearLevel(Lnet/minecraft/client/gui/screen/Screen;)V"}, at = @At(value = "HEAD"))
+	private void onLevelChange(CallbackInfo callback) {
+		TESEntityTracking.clearLevelShard();
+	}
 }
@@ -3,8 +3,8 @@ package net.tslat.tes.networking;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.math.vector.Vector3f;
 import net.minecraftforge.fml.network.NetworkEvent;
+import net.tslat.tes.api.TESParticle;
 import net.tslat.tes.core.particle.TESParticleManager;
-import net.tslat.tes.core.particle.type.NumericParticle;
 
 import java.util.function.Supplier;
 
@@ -32,7 +32,7 @@ public class NewNumericParticlePacket {
 	}
 
 	public void handleMessage(Supplier<NetworkEvent.Context> context) {
-		context.get().enqueueWork(() -> TESParticleManager.addParticle(new NumericParticle(null, this.position, this.value).withColour(this.colour)));
+		context.get().enqueueWork(() -> TESParticleManager.addNumericParticle(null, this.position.x(), this.position.y(), this.position.z(), TESParticle.Animation.POP_OFF, this.value, this.colour));
 		context.get().setPacketHandled(true);
 	}
 }
\ No newline at end of file